@@ -0,0 +1,51 @@
+package top.noaharno.cachedependency.annotation;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存一致性注解
+ * <p/>
+ * 标注在查询方法上，方法的返回值按照 cache-aside 的方式缓存：命中时直接返回缓存值；未命中时执行方法，
+ * 并在一次往返中写入缓存值和对所有表的依赖关系，表更新时缓存会被自动清理。返回值为 null 时不缓存
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheConsistency {
+
+    /**
+     * 业务名称，作为业务缓存键的前缀
+     */
+    String businessName();
+
+    /**
+     * 业务缓存键的 SpEL 表达式，可以通过 #p0、#a0 或者参数名（需要使用 -parameters 编译）引用方法参数，
+     * 例如 "#p0"、"#user.id + ':' + #type"。
+     * 最终的业务缓存键为 businessName:key；为空时使用所有参数拼接，没有参数时只使用 businessName
+     */
+    String key() default "";
+
+    /**
+     * 缓存依赖的表名，需要配置在 cache.dependency.tables 中
+     */
+    String[] tables();
+
+    /**
+     * 新鲜度级别，见 {@link top.noaharno.cachedependency.constant.CacheLevelEnum}
+     */
+    int freshness() default 1;
+
+    /**
+     * 缓存的过期时间，不大于 0 时不过期，只依赖表更新时的清理
+     */
+    long expire() default 0;
+
+    /**
+     * 过期时间的单位
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+}
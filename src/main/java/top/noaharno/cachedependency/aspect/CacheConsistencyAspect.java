@@ -0,0 +1,298 @@
+package top.noaharno.cachedependency.aspect;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.context.expression.CachedExpressionEvaluator;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.expression.Expression;
+import top.noaharno.cachedependency.annotation.CacheConsistency;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+import top.noaharno.cachedependency.constant.InvalidationModeEnum;
+import top.noaharno.cachedependency.metrics.CacheDependencyMetrics;
+import top.noaharno.cachedependency.service.CacheDependencyService;
+import top.noaharno.cachedependency.service.CacheReloadLease;
+import top.noaharno.cachedependency.service.SingleFlightLoader;
+import top.noaharno.cachedependency.service.VersionStampedCache;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link CacheConsistency} 注解的切面
+ * <p/>
+ * 命中时一次 GET 返回缓存值；未命中时执行方法，缓存值和所有表的依赖关系由
+ * {@link CacheDependencyService#cacheAndRecordDependencies} 在一次往返中写入。
+ * 读取或写入缓存失败时只记录日志，直接返回方法的执行结果，不影响业务
+ * <p/>
+ * 缓存被清理后，同一个节点上对同一个业务缓存键的并发未命中通过 {@link SingleFlightLoader} 只回源一次；
+ * 开启加载租约时，各个节点之间只有获得租约的节点回源并写入缓存和依赖关系，其它节点返回旧值副本，
+ * 没有旧值时短暂轮询新值，超时后自行回源
+ * <p/>
+ * LAZY 模式下缓存值带有读取数据之前各表的版本号，读取时通过一次 MGET 同时取得缓存值和各表当前的版本号，
+ * 不一致时视为未命中，写入时不记录依赖关系，见 {@link VersionStampedCache}
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+@Slf4j
+@Aspect
+public class CacheConsistencyAspect {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheDependencyService cacheDependencyService;
+
+    /**
+     * 业务缓存值的序列化器
+     */
+    private final RedisSerializer<Object> valueSerializer;
+
+    /**
+     * 进程内合并并发加载，未开启时为 null
+     */
+    private final SingleFlightLoader singleFlightLoader;
+
+    /**
+     * 跨节点的加载租约，未开启时为 null
+     */
+    private final CacheReloadLease reloadLease;
+
+    private final CacheDependencyProperties.Lease leaseProperties;
+
+    /**
+     * LAZY 模式下带版本戳的业务缓存，EAGER 模式下为 null
+     */
+    private final VersionStampedCache versionStampedCache;
+
+    private final CacheDependencyMetrics metrics;
+
+    private final KeyExpressionEvaluator keyExpressionEvaluator = new KeyExpressionEvaluator();
+
+    public CacheConsistencyAspect(StringRedisTemplate stringRedisTemplate, CacheDependencyService cacheDependencyService,
+                                  RedisSerializer<Object> valueSerializer, CacheDependencyProperties properties,
+                                  VersionStampedCache versionStampedCache) {
+        this(stringRedisTemplate, cacheDependencyService, valueSerializer, properties, versionStampedCache,
+                CacheDependencyMetrics.NOOP);
+    }
+
+    public CacheConsistencyAspect(StringRedisTemplate stringRedisTemplate, CacheDependencyService cacheDependencyService,
+                                  RedisSerializer<Object> valueSerializer, CacheDependencyProperties properties,
+                                  VersionStampedCache versionStampedCache, CacheDependencyMetrics metrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheDependencyService = cacheDependencyService;
+        this.valueSerializer = valueSerializer;
+        CacheDependencyProperties.SingleFlight singleFlight = properties.getSingleFlight();
+        this.singleFlightLoader = singleFlight.isEnabled() ? new SingleFlightLoader() : null;
+        this.leaseProperties = singleFlight.getLease();
+        this.reloadLease = leaseProperties.isEnabled()
+                ? new CacheReloadLease(stringRedisTemplate, cacheDependencyService, leaseProperties.getTtl()) : null;
+        this.versionStampedCache = properties.getInvalidationMode() == InvalidationModeEnum.LAZY ? versionStampedCache : null;
+        this.metrics = metrics;
+    }
+
+    @Around("@annotation(cacheConsistency)")
+    public Object around(ProceedingJoinPoint joinPoint, CacheConsistency cacheConsistency) throws Throwable {
+        String businessKey = getBusinessKey(joinPoint, cacheConsistency);
+        long[] versions = null;
+        if (versionStampedCache != null) {
+            VersionStampedCache.Lookup lookup;
+            try {
+                lookup = versionStampedCache.lookup(businessKey, cacheConsistency.tables());
+            } catch (RuntimeException e) {
+                log.warn("读取业务缓存失败，直接执行方法：businessKey={}", businessKey, e);
+                return joinPoint.proceed();
+            }
+            Object cached = deserialize(lookup.value(), businessKey);
+            metrics.recordCacheAccess(cacheConsistency.businessName(), cached != null);
+            if (cached != null) {
+                return cached;
+            }
+            // 使用读取数据之前的版本号写入新的缓存值，加载期间表被更新时新的缓存值会立即失效
+            versions = lookup.versions();
+        } else {
+            Object cached = getCached(businessKey);
+            metrics.recordCacheAccess(cacheConsistency.businessName(), cached != null);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long[] loadVersions = versions;
+        if (singleFlightLoader != null) {
+            return singleFlightLoader.load(businessKey, () -> load(joinPoint, cacheConsistency, businessKey, loadVersions));
+        }
+        return load(joinPoint, cacheConsistency, businessKey, loadVersions);
+    }
+
+    /**
+     * 共享加载结果的次数，未开启进程内合并时为 0
+     *
+     * @return 次数
+     */
+    public long getSharedLoadCount() {
+        return singleFlightLoader == null ? 0 : singleFlightLoader.getSharedLoadCount();
+    }
+
+    /**
+     * 缓存未命中时加载数据，开启加载租约时只有获得租约的调用方回源
+     *
+     * @param versions LAZY 模式下读取数据之前各表的版本号，EAGER 模式下为 null
+     */
+    private Object load(ProceedingJoinPoint joinPoint, CacheConsistency cacheConsistency, String businessKey,
+                        long[] versions) throws Throwable {
+        if (reloadLease == null) {
+            return proceedAndCache(joinPoint, cacheConsistency, businessKey, versions);
+        }
+        String token;
+        try {
+            token = reloadLease.tryAcquire(businessKey);
+        } catch (RuntimeException e) {
+            log.warn("获取加载租约失败，直接执行方法：businessKey={}", businessKey, e);
+            return proceedAndCache(joinPoint, cacheConsistency, businessKey, versions);
+        }
+        if (token != null) {
+            try {
+                return proceedAndCache(joinPoint, cacheConsistency, businessKey, versions);
+            } finally {
+                releaseLease(businessKey, token);
+            }
+        }
+        Object value = awaitValue(businessKey, versions);
+        return value != null ? value : proceedAndCache(joinPoint, cacheConsistency, businessKey, versions);
+    }
+
+    /**
+     * 执行方法，并在一次往返中写入缓存值和依赖关系；LAZY 模式下写入带版本戳的缓存值，不记录依赖关系
+     */
+    private Object proceedAndCache(ProceedingJoinPoint joinPoint, CacheConsistency cacheConsistency, String businessKey,
+                                   long[] versions) throws Throwable {
+        Object result = joinPoint.proceed();
+        if (result == null) {
+            return null;
+        }
+        try {
+            Duration ttl = cacheConsistency.expire() > 0
+                    ? Duration.of(cacheConsistency.expire(), cacheConsistency.timeUnit().toChronoUnit()) : null;
+            Duration staleTtl = reloadLease != null ? leaseProperties.getStaleTtl() : null;
+            if (versions != null) {
+                versionStampedCache.put(businessKey, valueSerializer.serialize(result), versions, ttl, staleTtl);
+            } else {
+                cacheDependencyService.cacheAndRecordDependencies(businessKey, valueSerializer.serialize(result), ttl, staleTtl,
+                        cacheConsistency.freshness(), cacheConsistency.tables());
+            }
+        } catch (RuntimeException e) {
+            log.warn("写入业务缓存失败：businessKey={}", businessKey, e);
+        }
+        return result;
+    }
+
+    /**
+     * 没有获得租约时，优先返回旧值副本，否则在等待时间内轮询持有租约的调用方写入的新值
+     *
+     * @return 旧值或者新值，超时后返回 null
+     */
+    private Object awaitValue(String businessKey, long[] versions) {
+        if (!leaseProperties.getStaleTtl().isZero()) {
+            Object stale = versions != null
+                    ? deserialize(versionStampedCache.getStale(businessKey), businessKey)
+                    : getCached(cacheDependencyService.getStaleKey(businessKey));
+            if (stale != null) {
+                return stale;
+            }
+        }
+        long deadline = System.nanoTime() + leaseProperties.getWaitTimeout().toNanos();
+        long pollMillis = Math.max(1, leaseProperties.getPollInterval().toMillis());
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            // LAZY 模式下旧的缓存值不会被删除，只接受按照相同版本号写入的新值
+            Object value = versions != null
+                    ? deserialize(versionStampedCache.getIfCurrent(businessKey, versions), businessKey)
+                    : getCached(businessKey);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取并反序列化缓存值，不存在或者读取失败时返回 null
+     */
+    private Object getCached(String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] cached = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+            return cached == null ? null : valueSerializer.deserialize(cached);
+        } catch (RuntimeException e) {
+            log.warn("读取业务缓存失败，直接执行方法：key={}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 反序列化缓存值，失败时视为未命中
+     */
+    private Object deserialize(byte[] value, String businessKey) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return valueSerializer.deserialize(value);
+        } catch (RuntimeException e) {
+            log.warn("反序列化业务缓存失败，直接执行方法：businessKey={}", businessKey, e);
+            return null;
+        }
+    }
+
+    private void releaseLease(String businessKey, String token) {
+        try {
+            reloadLease.release(businessKey, token);
+        } catch (RuntimeException e) {
+            log.warn("释放加载租约失败，等待租约过期：businessKey={}", businessKey, e);
+        }
+    }
+
+    /**
+     * 生成业务缓存键：businessName:key
+     */
+    private String getBusinessKey(ProceedingJoinPoint joinPoint, CacheConsistency cacheConsistency) {
+        Object[] args = joinPoint.getArgs();
+        if (StringUtils.isEmpty(cacheConsistency.key())) {
+            return args.length == 0 ? cacheConsistency.businessName()
+                    : cacheConsistency.businessName() + ":" + StringUtils.join(args, ":");
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Class<?> targetClass = AopUtils.getTargetClass(joinPoint.getTarget());
+        Object key = keyExpressionEvaluator.evaluate(cacheConsistency.key(), method, targetClass, args);
+        return cacheConsistency.businessName() + ":" + key;
+    }
+
+    /**
+     * 业务缓存键的 SpEL 表达式求值器，每个方法上的表达式只解析一次
+     */
+    private static class KeyExpressionEvaluator extends CachedExpressionEvaluator {
+
+        private final Map<ExpressionKey, Expression> expressionCache = new ConcurrentHashMap<>();
+
+        Object evaluate(String expression, Method method, Class<?> targetClass, Object[] args) {
+            MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, getParameterNameDiscoverer());
+            return getExpression(expressionCache, new AnnotatedElementKey(method, targetClass), expression).getValue(context);
+        }
+    }
+}
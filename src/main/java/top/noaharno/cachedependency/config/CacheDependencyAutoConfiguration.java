@@ -1,15 +1,34 @@
 package top.noaharno.cachedependency.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperties;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
 import org.springframework.context.annotation.DependsOn;
+import org.apache.ibatis.session.SqlSessionFactory;
+import top.noaharno.cachedependency.aspect.CacheConsistencyAspect;
+import top.noaharno.cachedependency.interceptor.MappedStatementTableIndex;
 import top.noaharno.cachedependency.interceptor.TableAnalysisInterceptor;
+import top.noaharno.cachedependency.metrics.CacheDependencyMetrics;
+import top.noaharno.cachedependency.metrics.MicrometerCacheDependencyMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
 import top.noaharno.cachedependency.service.CacheDependencyService;
+import top.noaharno.cachedependency.service.TableVersionCache;
+import top.noaharno.cachedependency.service.VersionStampedCache;
+import top.noaharno.cachedependency.store.DependencyStore;
+import top.noaharno.cachedependency.store.InMemoryDependencyStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.ClassUtils;
 
 /**
  * 缓存一致性自动配置类
@@ -32,12 +51,118 @@ public class CacheDependencyAutoConfiguration {
     @Bean
     public TableAnalysisInterceptor tableAnalysisInterceptor(StringRedisTemplate stringRedisTemplate,
                                                              CacheDependencyService cacheDependencyService,
-                                                             CacheDependencyProperties cacheDependencyProperties) {
-        return new TableAnalysisInterceptor(stringRedisTemplate, cacheDependencyService, cacheDependencyProperties);
+                                                             CacheDependencyProperties cacheDependencyProperties,
+                                                             ObjectProvider<MappedStatementTableIndex> mappedStatementTableIndex,
+                                                             CacheDependencyMetrics cacheDependencyMetrics) {
+        TableAnalysisInterceptor interceptor = new TableAnalysisInterceptor(stringRedisTemplate, cacheDependencyService,
+                cacheDependencyProperties, mappedStatementTableIndex.getIfAvailable(), cacheDependencyMetrics);
+        cacheDependencyMetrics.bindInterceptor(interceptor);
+        return interceptor;
     }
 
+    /**
+     * 没有 Micrometer 时不记录指标
+     */
     @Bean
-    public CacheDependencyService cacheDependencyService(StringRedisTemplate stringRedisTemplate, CacheDependencyProperties cacheDependencyProperties) {
-        return new CacheDependencyService(stringRedisTemplate, cacheDependencyProperties);
+    @ConditionalOnMissingBean
+    public CacheDependencyMetrics cacheDependencyMetrics() {
+        return CacheDependencyMetrics.NOOP;
+    }
+
+    @Bean
+    @ConditionalOnBooleanProperty(prefix = "cache.dependency", value = "pre-analyze", matchIfMissing = true)
+    public MappedStatementTableIndex mappedStatementTableIndex(ObjectProvider<SqlSessionFactory> sqlSessionFactories,
+                                                               CacheDependencyProperties cacheDependencyProperties) {
+        // 只持有 SqlSessionFactory 的延迟引用，SqlSessionFactory 本身依赖拦截器，在所有单例初始化完成后再遍历
+        return new MappedStatementTableIndex(sqlSessionFactories, cacheDependencyProperties);
+    }
+
+    @Bean
+    public CacheDependencyService cacheDependencyService(StringRedisTemplate stringRedisTemplate,
+                                                         CacheDependencyProperties cacheDependencyProperties,
+                                                         ObjectProvider<TableVersionCache> tableVersionCache,
+                                                         ObjectProvider<DependencyStore> dependencyStore) {
+        return new CacheDependencyService(stringRedisTemplate, cacheDependencyProperties, tableVersionCache.getIfAvailable(),
+                dependencyStore.getIfAvailable());
+    }
+
+    /**
+     * 进程内的依赖关系存储，业务缓存仍然存放在 Redis 中，清理时分页 UNLINK。也可以声明 {@link DependencyStore} 类型的 Bean 替换
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "cache.dependency", name = "store", havingValue = "MEMORY")
+    public DependencyStore dependencyStore(StringRedisTemplate stringRedisTemplate,
+                                           CacheDependencyProperties cacheDependencyProperties) {
+        return new InMemoryDependencyStore(cacheDependencyProperties.getTables(), cacheDependencyProperties.getCleanPageSize(),
+                stringRedisTemplate::unlink);
+    }
+
+    /**
+     * {@link top.noaharno.cachedependency.annotation.CacheConsistency} 缓存值的序列化器，可以声明同名的 Bean 替换。
+     * 默认在 Jackson 存在时使用带类型信息的 JSON，否则使用 JDK 序列化（缓存的对象需要实现 Serializable）
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "cacheConsistencyValueSerializer")
+    public RedisSerializer<Object> cacheConsistencyValueSerializer() {
+        return ClassUtils.isPresent("com.fasterxml.jackson.databind.ObjectMapper", getClass().getClassLoader())
+                ? RedisSerializer.json() : RedisSerializer.java();
+    }
+
+    @Bean
+    @ConditionalOnClass(name = "org.aspectj.weaver.Advice")
+    public CacheConsistencyAspect cacheConsistencyAspect(StringRedisTemplate stringRedisTemplate,
+                                                         CacheDependencyService cacheDependencyService,
+                                                         @Qualifier("cacheConsistencyValueSerializer") RedisSerializer<Object> cacheConsistencyValueSerializer,
+                                                         CacheDependencyProperties cacheDependencyProperties,
+                                                         ObjectProvider<VersionStampedCache> versionStampedCache,
+                                                         CacheDependencyMetrics cacheDependencyMetrics) {
+        return new CacheConsistencyAspect(stringRedisTemplate, cacheDependencyService, cacheConsistencyValueSerializer,
+                cacheDependencyProperties, versionStampedCache.getIfAvailable(), cacheDependencyMetrics);
+    }
+
+    /**
+     * 带版本戳的业务缓存，只在 LAZY 模式下使用
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "cache.dependency", name = "invalidation-mode", havingValue = "LAZY")
+    public VersionStampedCache versionStampedCache(StringRedisTemplate stringRedisTemplate,
+                                                   CacheDependencyService cacheDependencyService,
+                                                   CacheDependencyProperties cacheDependencyProperties,
+                                                   ObjectProvider<TableVersionCache> tableVersionCache) {
+        return new VersionStampedCache(stringRedisTemplate, cacheDependencyService, cacheDependencyProperties,
+                tableVersionCache.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnBooleanProperty(prefix = "cache.dependency.version-cache", value = "enabled")
+    public TableVersionCache tableVersionCache(CacheDependencyProperties cacheDependencyProperties) {
+        return new TableVersionCache(cacheDependencyProperties.getVersionCache().getMaxAge());
+    }
+
+    @Bean
+    @ConditionalOnBooleanProperty(prefix = "cache.dependency.version-cache", value = "enabled")
+    public RedisMessageListenerContainer cacheDependencyListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                         TableVersionCache tableVersionCache,
+                                                                         CacheDependencyProperties cacheDependencyProperties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(tableVersionCache, new ChannelTopic(cacheDependencyProperties.getVersionCache().getChannel()));
+        return container;
+    }
+
+    /**
+     * 存在 Micrometer 时使用应用的 MeterRegistry 记录指标，单独放在内部类中，避免没有 Micrometer 时加载它的类
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MicrometerMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public CacheDependencyMetrics cacheDependencyMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            return registry == null ? CacheDependencyMetrics.NOOP : new MicrometerCacheDependencyMetrics(registry);
+        }
     }
-}
\ No newline at end of file
+}
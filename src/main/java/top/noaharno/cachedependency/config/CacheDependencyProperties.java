@@ -2,8 +2,18 @@ package top.noaharno.cachedependency.config;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import top.noaharno.cachedependency.constant.BackpressureStrategyEnum;
+import top.noaharno.cachedependency.constant.CacheLevelEnum;
+import top.noaharno.cachedependency.constant.DependencyStoreTypeEnum;
+import top.noaharno.cachedependency.constant.InvalidationModeEnum;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil;
 
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -37,8 +47,338 @@ public class CacheDependencyProperties {
      */
     private Set<String> tables = new HashSet<>();
 
+    /**
+     * 表名 -> 主键列。配置了主键列的表支持行级依赖关系：写操作能够确定影响的行时，只清理这些行的行级依赖关系
+     */
+    private Map<String, String> rowKeyColumns = new HashMap<>();
+
+    /**
+     * 表名 -> 需要跟踪的列，每张表最多 64 列。跟踪了列的表支持列级依赖关系：
+     * UPDATE 只清理依赖的列与修改的列有交集的列级依赖关系，INSERT、DELETE 视为修改所有列
+     */
+    private Map<String, List<String>> trackedColumns = new HashMap<>();
+
+    /**
+     * 每张表每个版本的依赖关系 ZSET 分片数量。业务缓存键按照哈希值分配到其中一个分片，避免依赖很多缓存的表形成大 key；
+     * 为 1 时不分片。所有节点需要使用相同的分片数量，减少分片数量之前需要先清空依赖关系
+     */
+    private int dependencyShards = 1;
+
+    /**
+     * 表版本号和表级依赖关系的存储方式，MEMORY 只适用于单节点部署
+     */
+    private DependencyStoreTypeEnum store = DependencyStoreTypeEnum.REDIS;
+
     /**
      * 异步清理缓存的线程池大小
      */
     private int cleanThreadPoolSize = 10;
-}
\ No newline at end of file
+
+    /**
+     * 分页清理时每页的业务缓存键数量
+     */
+    private int cleanPageSize = 500;
+
+    /**
+     * 分页清理时两页之间的间隔，为 0 时连续清理
+     */
+    private Duration cleanPageInterval = Duration.ZERO;
+
+    /**
+     * 是否开启事务感知的缓存清理：开启后，Spring 事务内的写操作只收集涉及的表，
+     * 在事务提交后统一做一次去重后的清理，事务回滚时不清理；不在事务中时仍然立即清理
+     */
+    private boolean transactionAware = false;
+
+    /**
+     * SQL 解析缓存的容量，按照 SQL 的 ID 和绑定后的 SQL 缓存解析出的表名，超过后按照写入顺序淘汰
+     */
+    private int parseCacheMaxSize = SqlAnalysisUtil.DEFAULT_MAX_SIZE;
+
+    /**
+     * 是否在启动时预解析所有静态写 SQL 的 MappedStatement，执行时优先使用预解析的结果
+     */
+    private boolean preAnalyze = true;
+
+    /**
+     * 异步清理配置
+     */
+    private Async async = new Async();
+
+    /**
+     * 写操作合并配置
+     */
+    private Coalesce coalesce = new Coalesce();
+
+    /**
+     * 表版本号本地缓存配置
+     */
+    private VersionCache versionCache = new VersionCache();
+
+    /**
+     * 依赖关系本地去重配置
+     */
+    private RegistrationFilter registrationFilter = new RegistrationFilter();
+
+    /**
+     * Redis Cluster 配置
+     */
+    private Cluster cluster = new Cluster();
+
+    /**
+     * 分级清理调度配置
+     */
+    private Schedule schedule = new Schedule();
+
+    /**
+     * 表级缓存的失效模式：EAGER 在表更新时删除依赖该表的业务缓存，LAZY 只自增版本号，读取时校验缓存值的版本戳
+     */
+    private InvalidationModeEnum invalidationMode = InvalidationModeEnum.EAGER;
+
+    /**
+     * 缓存重新加载的防击穿配置
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 过期依赖关系清理配置
+     */
+    private ExpirySweep expirySweep = new ExpirySweep();
+
+    /**
+     * 过期依赖关系清理配置：记录依赖关系时传入了业务缓存的过期时间的，同时写入每张表的过期索引（按过期时间排序的 ZSET），
+     * 后台按照过期时间分页检查，业务缓存已经不存在时从依赖关系中移除，使很少更新的表的依赖关系不会无限增长。需要 Redis 6.2 及以上版本
+     */
+    @Data
+    public static class ExpirySweep {
+
+        /**
+         * 是否开启过期依赖关系清理
+         */
+        private boolean enabled = false;
+
+        /**
+         * 两轮检查之间的间隔
+         */
+        private Duration interval = Duration.ofMinutes(1);
+
+        /**
+         * 每页检查的过期索引条目数量
+         */
+        private int pageSize = 500;
+
+        /**
+         * 每秒最多检查的过期索引条目数量，为 0 时不限速
+         */
+        private int rateLimit = 1000;
+
+        /**
+         * 过期时间之后再等待的时长，用于容忍节点之间的时钟偏差，到期之后才检查业务缓存是否存在
+         */
+        private Duration grace = Duration.ofMinutes(1);
+    }
+
+    /**
+     * 缓存重新加载的防击穿配置：缓存被清理后，同一个业务缓存键只由一个调用方加载，其它调用方共享加载结果
+     */
+    @Data
+    public static class SingleFlight {
+
+        /**
+         * 是否在进程内合并同一个业务缓存键的并发加载
+         */
+        private boolean enabled = true;
+
+        /**
+         * 跨节点的加载租约配置
+         */
+        private Lease lease = new Lease();
+    }
+
+    /**
+     * 跨节点的加载租约配置：只有获得租约的节点加载并写入缓存，其它节点返回旧值或者短暂等待新值
+     */
+    @Data
+    public static class Lease {
+
+        /**
+         * 是否开启加载租约
+         */
+        private boolean enabled = false;
+
+        /**
+         * 租约的有效期，应当大于加载一次数据的耗时，持有租约的节点异常退出时租约在该时间后自动释放
+         */
+        private Duration ttl = Duration.ofSeconds(3);
+
+        /**
+         * 没有获得租约、也没有旧值时等待新值的最长时间，超时后自行加载
+         */
+        private Duration waitTimeout = Duration.ofMillis(200);
+
+        /**
+         * 等待新值时轮询缓存的间隔
+         */
+        private Duration pollInterval = Duration.ofMillis(20);
+
+        /**
+         * 旧值副本的有效期：写入缓存时同时写入一份不受表更新影响的副本，缓存被清理后没有获得租约的调用方直接返回副本，
+         * 为 0 时不保留旧值
+         */
+        private Duration staleTtl = Duration.ZERO;
+    }
+
+    /**
+     * 异步清理配置：开启后写线程只负责入队，缓存清理在虚拟线程上执行
+     */
+    @Data
+    public static class Async {
+
+        /**
+         * 是否开启异步清理
+         */
+        private boolean enabled = false;
+
+        /**
+         * 队列容量
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * 调度线程每批次最多取出的表数量
+         */
+        private int maxBatchSize = 256;
+
+        /**
+         * 同时执行的清理批次数量，所有批次都在执行时新的变化留在队列中，由背压策略处理
+         */
+        private int maxConcurrency = 4;
+
+        /**
+         * 队列已满时的背压策略
+         */
+        private BackpressureStrategyEnum backpressure = BackpressureStrategyEnum.COALESCE;
+    }
+
+    /**
+     * 写操作合并配置：同一张表在合并窗口内的所有写操作只会触发一次版本号自增和清理
+     */
+    @Data
+    public static class Coalesce {
+
+        /**
+         * 默认的合并窗口，为 0 时不合并
+         */
+        private Duration window = Duration.ZERO;
+
+        /**
+         * 按表单独配置的合并窗口，优先级高于 window
+         */
+        private Map<String, Duration> tableWindows = new HashMap<>();
+
+        /**
+         * 获取表的合并窗口
+         *
+         * @param tableName 表名
+         * @return 合并窗口
+         */
+        public Duration getWindow(String tableName) {
+            return tableWindows.getOrDefault(tableName, window);
+        }
+    }
+
+    /**
+     * 表版本号本地缓存配置：表更新时通过 Redis 频道广播新的版本号，记录缓存依赖关系时直接使用本地版本号
+     */
+    @Data
+    public static class VersionCache {
+
+        /**
+         * 是否开启表版本号本地缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 广播版本号变更的频道
+         */
+        private String channel = "cache:dependency:version-changed";
+
+        /**
+         * 本地版本号的最长有效期，用于兜底订阅期间丢失的消息。
+         * 拦截器会在该时间之后再次清理旧版本的依赖关系，收尾使用过期版本号写入的依赖关系
+         */
+        private Duration maxAge = Duration.ofSeconds(5);
+    }
+
+    /**
+     * 依赖关系本地去重配置：同一个业务缓存键在表的同一个版本下只写入一次依赖关系，需要同时开启 version-cache
+     */
+    @Data
+    public static class RegistrationFilter {
+
+        /**
+         * 是否开启依赖关系本地去重
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每张表最多记录的业务缓存键数量，超过后清空重新记录
+         */
+        private int maxEntriesPerTable = 10000;
+    }
+
+    /**
+     * Redis Cluster 配置：开启后同一张表的版本号和依赖关系通过 hash tag 位于同一个槽位，
+     * 业务缓存按槽位分组后，每个节点使用各自的流水线并行删除。开启后 key 的格式会发生变化
+     */
+    @Data
+    public static class Cluster {
+
+        /**
+         * 是否开启 Redis Cluster 模式
+         */
+        private boolean enabled = false;
+    }
+
+    /**
+     * 分级清理调度配置：每个新鲜度级别的业务缓存在各自的截止时间内分页、均匀地清理，
+     * 所有级别共享一个全局的删除速率限制，避免大量缓存集中失效后同时回源数据库
+     */
+    @Data
+    public static class Schedule {
+
+        /**
+         * 每个新鲜度级别的清理截止时间，为 0 时立即清理
+         */
+        private Map<CacheLevelEnum, Duration> deadlines = defaultDeadlines();
+
+        /**
+         * 每秒最多删除的业务缓存数量，为 0 时不限速
+         */
+        private int deleteRateLimit = 0;
+
+        /**
+         * 每页清理时间的随机抖动占时间片的比例，取值范围 [0, 1]
+         */
+        private double jitterRatio = 0.5;
+
+        /**
+         * 获取新鲜度级别的清理截止时间
+         *
+         * @param cacheLevel 新鲜度级别
+         * @return 截止时间
+         */
+        public Duration getDeadline(CacheLevelEnum cacheLevel) {
+            return deadlines.getOrDefault(cacheLevel, Duration.ZERO);
+        }
+
+        private static Map<CacheLevelEnum, Duration> defaultDeadlines() {
+            Map<CacheLevelEnum, Duration> deadlines = new EnumMap<>(CacheLevelEnum.class);
+            deadlines.put(CacheLevelEnum.SECONDS, Duration.ZERO);
+            deadlines.put(CacheLevelEnum.MINUTES, Duration.ofSeconds(30));
+            deadlines.put(CacheLevelEnum.HOURS, Duration.ofMinutes(5));
+            deadlines.put(CacheLevelEnum.DAYS, Duration.ofMinutes(30));
+            return deadlines;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package top.noaharno.cachedependency.constant;
+
+/**
+ * 异步清理队列已满时的背压策略
+ *
+ * @author NoahArno
+ * @version 1.0.0
+ */
+public enum BackpressureStrategyEnum {
+
+    /**
+     * 阻塞写线程，直到队列有空余位置
+     */
+    BLOCK,
+
+    /**
+     * 放弃入队，直接在写线程上同步清理
+     */
+    CALLER_RUNS,
+
+    /**
+     * 放弃入队，将表合并到溢出集合中，由调度线程在下一批次中一并清理。
+     * 溢出集合按表名去重，占用的内存不会超过表的数量
+     */
+    COALESCE
+
+}
@@ -54,4 +54,18 @@ public enum CacheLevelEnum {
                 .toArray(CacheLevelEnum[]::new);
     }
 
+    /**
+     * 根据新鲜度级别获取枚举
+     * @param level 新鲜度级别
+     * @return 对应的枚举，不存在时返回 null
+     */
+    public static CacheLevelEnum fromLevel(int level) {
+        for (CacheLevelEnum cacheLevel : values()) {
+            if (cacheLevel.level == level) {
+                return cacheLevel;
+            }
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,21 @@
+package top.noaharno.cachedependency.constant;
+
+/**
+ * 表版本号和表级依赖关系的存储方式
+ *
+ * @author NoahArno
+ * @version 1.0.0
+ */
+public enum DependencyStoreTypeEnum {
+
+    /**
+     * 存储在 Redis 中，多个节点共享版本号和依赖关系
+     */
+    REDIS,
+
+    /**
+     * 存储在当前进程的内存中，记录和清理依赖关系不需要访问 Redis，只适用于单节点部署。业务缓存仍然由清理器删除
+     */
+    MEMORY
+
+}
@@ -0,0 +1,22 @@
+package top.noaharno.cachedependency.constant;
+
+/**
+ * 表级缓存的失效模式
+ *
+ * @author NoahArno
+ * @version 1.0.0
+ */
+public enum InvalidationModeEnum {
+
+    /**
+     * 表更新时自增版本号，并按照依赖关系删除上一版本的所有业务缓存，写操作的开销与依赖的缓存数量成正比
+     */
+    EAGER,
+
+    /**
+     * 表更新时只自增版本号，不删除业务缓存。业务缓存值带有写入时各表的版本号，读取时与当前版本号比较，
+     * 不一致时视为未命中。写操作的开销是常数，过期的业务缓存依靠过期时间回收
+     */
+    LAZY
+
+}
@@ -0,0 +1,215 @@
+package top.noaharno.cachedependency.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import top.noaharno.cachedependency.constant.BackpressureStrategyEnum;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 异步缓存清理调度器
+ * <p/>
+ * 写线程只负责把表上的变化放入有界的无锁队列，调度线程批量取出、按表合并后，交给虚拟线程执行真正的缓存清理，
+ * 使数据库写操作的耗时不再受 Redis 延迟影响。同时执行的批次数量有上限，调度线程先获得许可再取出下一批，
+ * 清理跟不上写入时变化积压在队列中，队列深度反映真实的积压，队列满后由背压策略处理
+ */
+@Slf4j
+class AsyncInvalidationDispatcher implements AutoCloseable {
+
+    /**
+     * 队列为空时调度线程的最长休眠时间
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * 阻塞策略下写线程每次等待的时间
+     */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final ConcurrentLinkedQueue<TableChange> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 队列中的元素个数，ConcurrentLinkedQueue#size 需要遍历整个队列，因此单独计数
+     */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /**
+     * 队列已满时被合并的表上的变化，仅在 COALESCE 策略下使用
+     */
+    private final Map<String, TableChange> overflowChanges = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    private final int maxBatchSize;
+
+    private final BackpressureStrategyEnum backpressure;
+
+    private final Consumer<Collection<TableChange>> invalidator;
+
+    private final Executor invalidationExecutor;
+
+    /**
+     * 正在执行的清理批次的许可
+     */
+    private final Semaphore inFlightBatches;
+
+    private final Thread dispatcherThread;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param maxConcurrency 同时执行的清理批次数量
+     */
+    AsyncInvalidationDispatcher(int capacity, int maxBatchSize, int maxConcurrency, BackpressureStrategyEnum backpressure,
+                                Consumer<Collection<TableChange>> invalidator) {
+        this(capacity, maxBatchSize, maxConcurrency, backpressure, invalidator, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * @param maxConcurrency       同时执行的清理批次数量
+     * @param invalidationExecutor 执行缓存清理的线程池，是 ExecutorService 时随调度器一起关闭
+     */
+    AsyncInvalidationDispatcher(int capacity, int maxBatchSize, int maxConcurrency, BackpressureStrategyEnum backpressure,
+                                Consumer<Collection<TableChange>> invalidator, Executor invalidationExecutor) {
+        if (maxConcurrency < 1) {
+            throw new RuntimeException("The max concurrency of async invalidation must be positive.");
+        }
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.inFlightBatches = new Semaphore(maxConcurrency);
+        this.backpressure = backpressure;
+        this.invalidator = invalidator;
+        this.invalidationExecutor = invalidationExecutor;
+        this.dispatcherThread = Thread.ofPlatform().name("cache-dependency-dispatcher").daemon().start(this::dispatchLoop);
+    }
+
+    /**
+     * 提交需要清理的表上的变化
+     *
+     * @param changes 写操作涉及的表上的变化
+     */
+    void submit(Collection<TableChange> changes) {
+        List<TableChange> rejectedChanges = null;
+        for (TableChange change : changes) {
+            while (!tryEnqueue(change)) {
+                if (running && backpressure == BackpressureStrategyEnum.BLOCK) {
+                    LockSupport.unpark(dispatcherThread);
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    continue;
+                }
+                if (running && backpressure == BackpressureStrategyEnum.COALESCE) {
+                    overflowChanges.merge(change.table(), change, TableChange::merge);
+                } else {
+                    // 调度器已关闭或者使用 CALLER_RUNS 策略
+                    if (rejectedChanges == null) {
+                        rejectedChanges = new ArrayList<>();
+                    }
+                    rejectedChanges.add(change);
+                }
+                break;
+            }
+        }
+        LockSupport.unpark(dispatcherThread);
+        if (rejectedChanges != null) {
+            // 队列已满，由写线程同步清理
+            invalidator.accept(rejectedChanges);
+        }
+    }
+
+    /**
+     * 当前排队等待清理的表数量（包含被合并的溢出表）
+     *
+     * @return 队列深度
+     */
+    int getQueueDepth() {
+        return queueDepth.get() + overflowChanges.size();
+    }
+
+    private boolean tryEnqueue(TableChange change) {
+        if (!running) {
+            return false;
+        }
+        int depth;
+        do {
+            depth = queueDepth.get();
+            if (depth >= capacity) {
+                return false;
+            }
+        } while (!queueDepth.compareAndSet(depth, depth + 1));
+        queue.offer(change);
+        return true;
+    }
+
+    private void dispatchLoop() {
+        while (running || !queue.isEmpty() || !overflowChanges.isEmpty()) {
+            // 先获得许可再取出，正在执行的批次达到上限时变化留在队列中
+            inFlightBatches.acquireUninterruptibly();
+            Collection<TableChange> batch = drain();
+            if (batch.isEmpty()) {
+                inFlightBatches.release();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                invalidationExecutor.execute(() -> {
+                    try {
+                        invalidator.accept(batch);
+                    } finally {
+                        inFlightBatches.release();
+                    }
+                });
+            } catch (Exception e) {
+                inFlightBatches.release();
+                log.error("提交异步缓存清理任务失败，所涉及的表为：{}", batch, e);
+            }
+        }
+    }
+
+    /**
+     * 取出一批变化并按表合并
+     */
+    private Collection<TableChange> drain() {
+        Map<String, TableChange> batch = new LinkedHashMap<>();
+        TableChange change;
+        while (batch.size() < maxBatchSize && (change = queue.poll()) != null) {
+            queueDepth.decrementAndGet();
+            batch.merge(change.table(), change, TableChange::merge);
+        }
+        if (!overflowChanges.isEmpty()) {
+            for (String overflowTable : overflowChanges.keySet()) {
+                TableChange overflowChange = overflowChanges.remove(overflowTable);
+                if (overflowChange != null) {
+                    batch.merge(overflowTable, overflowChange, TableChange::merge);
+                }
+            }
+        }
+        return batch.values();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(dispatcherThread);
+        try {
+            dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (invalidationExecutor instanceof ExecutorService executorService) {
+            executorService.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package top.noaharno.cachedependency.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import top.noaharno.cachedependency.metrics.CacheDependencyMetrics;
+import top.noaharno.cachedependency.service.CacheDependencyService;
+import top.noaharno.cachedependency.service.ColumnDictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 清理列级依赖关系
+ * <p/>
+ * 依赖相同列的业务缓存位于同一个 ZSET，以列位图区分，每张表用一个 SET 记录存在依赖关系的列位图。
+ * 写操作只需要读取一次列位图索引，在本地通过按位与找出与修改的列有交集的列位图，再把对应的 ZSET 摘下成为快照。
+ * 列位图在同一个脚本中从索引中移除并改名为快照，由拦截器按照新鲜度级别清理快照，
+ * 并发写入的依赖关系要么在快照中被清理，要么仍然在索引中
+ */
+@Slf4j
+class ColumnDependencyInvalidator {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheDependencyService cacheDependencyService;
+
+    private final ColumnDictionary columnDictionary;
+
+    private final DependencyDetacher dependencyDetacher;
+
+    private final CacheDependencyMetrics metrics;
+
+    ColumnDependencyInvalidator(StringRedisTemplate stringRedisTemplate, CacheDependencyService cacheDependencyService,
+                                DependencyDetacher dependencyDetacher, CacheDependencyMetrics metrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheDependencyService = cacheDependencyService;
+        this.columnDictionary = cacheDependencyService.getColumnDictionary();
+        this.dependencyDetacher = dependencyDetacher;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 表是否跟踪了列
+     *
+     * @param tableName 表名
+     * @return 是否跟踪
+     */
+    boolean isTracked(String tableName) {
+        return columnDictionary.isTracked(tableName);
+    }
+
+    /**
+     * 摘下一张表上与变化的列有交集的列级依赖关系
+     *
+     * @param change 表上的变化
+     * @return 需要清理的快照键
+     */
+    List<String> detach(TableChange change) {
+        long changeMask = columnDictionary.changeMask(change.table(), change.columns());
+        if (changeMask == 0) {
+            // 只修改了没有被任何依赖关系引用的列
+            return List.of();
+        }
+        String columnIndexKey = cacheDependencyService.getColumnIndexKey(change.table());
+        Set<String> dependencyMasks = stringRedisTemplate.opsForSet().members(columnIndexKey);
+        metrics.recordRedisCall("column-index");
+        if (dependencyMasks == null || dependencyMasks.isEmpty()) {
+            return List.of();
+        }
+        List<String> overlappingMasks = new ArrayList<>();
+        for (String dependencyMask : dependencyMasks) {
+            long mask;
+            try {
+                mask = Long.parseUnsignedLong(dependencyMask, 16);
+            } catch (NumberFormatException e) {
+                log.warn("跳过无法解析的列位图：columnIndexKey={}, mask={}", columnIndexKey, dependencyMask);
+                continue;
+            }
+            if ((mask & changeMask) != 0) {
+                overlappingMasks.add(dependencyMask);
+            }
+        }
+        // 每个列位图单独改名为一个快照，不需要复制依赖关系
+        return dependencyDetacher.detach(change.table(), columnIndexKey,
+                cacheDependencyService.getColumnDependencyKeyPrefix(change.table()), overlappingMasks, 1, "column-detach");
+    }
+}
@@ -0,0 +1,44 @@
+package top.noaharno.cachedependency.interceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局的删除速率限制器
+ * <p/>
+ * 按照每秒允许删除的业务缓存数量发放许可，调用方预占许可后得到需要等待的时间，自行决定延后执行，不会阻塞线程
+ */
+class DeleteRateLimiter {
+
+    /**
+     * 每个许可的间隔，为 0 时不限速
+     */
+    private final long nanosPerPermit;
+
+    /**
+     * 下一个可用许可的时间点
+     */
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond 每秒允许删除的业务缓存数量，小于等于 0 时不限速
+     */
+    DeleteRateLimiter(int permitsPerSecond) {
+        this.nanosPerPermit = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+    }
+
+    /**
+     * 预占许可
+     *
+     * @param permits 需要删除的业务缓存数量
+     * @return 获得这些许可之前需要等待的纳秒数
+     */
+    synchronized long reserve(int permits) {
+        if (nanosPerPermit == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long waitNanos = Math.max(0, nextFreeNanos - now);
+        nextFreeNanos = Math.max(nextFreeNanos, now) + permits * nanosPerPermit;
+        return waitNanos;
+    }
+}
@@ -0,0 +1,111 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import top.noaharno.cachedependency.metrics.CacheDependencyMetrics;
+import top.noaharno.cachedependency.service.CacheDependencyService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 从索引中摘下不区分版本的依赖关系（行级、列级）
+ * <p/>
+ * 被摘下的依赖关系原子地合并到新的快照 ZSET 中，快照之后不会再被写入，与旧版本的表级依赖关系一样交给拦截器
+ * 按照新鲜度级别的截止时间和全局删除速率分页清理，清理完成后释放。摘下只移动数据，不删除业务缓存，
+ * 写线程上每一页只需要一次脚本调用
+ */
+class DependencyDetacher {
+
+    private static final RedisScript<Long> DETACH_DEPENDENCIES_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/cache-dependency/detach_dependencies.lua"), Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheDependencyService cacheDependencyService;
+
+    private final int pageSize;
+
+    private final CacheDependencyMetrics metrics;
+
+    DependencyDetacher(StringRedisTemplate stringRedisTemplate, CacheDependencyService cacheDependencyService, int pageSize,
+                       CacheDependencyMetrics metrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheDependencyService = cacheDependencyService;
+        this.pageSize = pageSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 摘下索引中指定成员的依赖关系，每 membersPerSnapshot 个成员合并成一个快照，所有快照通过同一个流水线创建
+     *
+     * @param table              表名
+     * @param indexKey           索引键
+     * @param keyPrefix          依赖关系键的前缀，拼接索引成员后即为依赖关系键
+     * @param members            需要摘下的索引成员
+     * @param membersPerSnapshot 每个快照合并的成员数量，为 1 时直接改名，不复制依赖关系
+     * @param operation          统计 Redis 往返时使用的操作名称
+     * @return 快照键，其中的依赖关系需要清理
+     */
+    List<String> detach(String table, String indexKey, String keyPrefix, Collection<String> members, int membersPerSnapshot,
+                        String operation) {
+        if (members.isEmpty()) {
+            return List.of();
+        }
+        List<String> snapshotKeys = new ArrayList<>();
+        List<List<String>> argsBySnapshot = new ArrayList<>();
+        List<String> args = null;
+        for (String member : members) {
+            if (args == null || args.size() - 2 >= membersPerSnapshot) {
+                args = new ArrayList<>(Math.min(members.size(), membersPerSnapshot) + 2);
+                args.add(keyPrefix);
+                args.add("0");
+                argsBySnapshot.add(args);
+                snapshotKeys.add(cacheDependencyService.newDetachedDependencyKey(table));
+            }
+            args.add(member);
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                for (int i = 0; i < snapshotKeys.size(); i++) {
+                    stringOperations.execute(DETACH_DEPENDENCIES_SCRIPT, List.of(indexKey, snapshotKeys.get(i)),
+                            argsBySnapshot.get(i).toArray());
+                }
+                return null;
+            }
+        });
+        metrics.recordRedisCall(operation);
+        return snapshotKeys;
+    }
+
+    /**
+     * 分页弹出索引中的所有成员，摘下它们的依赖关系，每一页合并成一个快照
+     *
+     * @param table     表名
+     * @param indexKey  索引键
+     * @param keyPrefix 依赖关系键的前缀，拼接索引成员后即为依赖关系键
+     * @param operation 统计 Redis 往返时使用的操作名称
+     * @return 快照键，其中的依赖关系需要清理
+     */
+    List<String> detachAll(String table, String indexKey, String keyPrefix, String operation) {
+        List<String> snapshotKeys = new ArrayList<>();
+        Long detached;
+        do {
+            String snapshotKey = cacheDependencyService.newDetachedDependencyKey(table);
+            detached = stringRedisTemplate.execute(DETACH_DEPENDENCIES_SCRIPT, List.of(indexKey, snapshotKey), keyPrefix,
+                    String.valueOf(pageSize));
+            metrics.recordRedisCall(operation);
+            if (detached != null && detached > 0) {
+                snapshotKeys.add(snapshotKey);
+            }
+        } while (detached != null && detached >= pageSize);
+        return snapshotKeys;
+    }
+}
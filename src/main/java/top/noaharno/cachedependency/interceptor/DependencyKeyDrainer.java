@@ -0,0 +1,153 @@
+package top.noaharno.cachedependency.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import top.noaharno.cachedependency.metrics.CacheDependencyMetrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分页清理依赖关系 ZSET
+ * <p/>
+ * 每次只从依赖关系中取出固定数量的业务缓存键，在同一个流水线中 UNLINK 这些缓存、从 ZSET 中移除它们，并取出下一页，
+ * 避免把百万级的依赖关系一次性读入内存，也避免单条 DEL 命令长时间阻塞 Redis。
+ * 配置了分页间隔时，后续分页交给调度线程池执行，不会阻塞当前线程
+ */
+@Slf4j
+class DependencyKeyDrainer {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int pageSize;
+
+    private final long pageIntervalMillis;
+
+    /**
+     * Redis Cluster 模式下按槽位分组删除业务缓存，非集群模式时为 null
+     */
+    private final SlotGroupedKeyDeleter slotGroupedKeyDeleter;
+
+    /**
+     * 全局的删除速率限制器
+     */
+    private final DeleteRateLimiter rateLimiter;
+
+    /**
+     * 累计删除的业务缓存数量
+     */
+    private final LongAdder deletedKeys = new LongAdder();
+
+    private final CacheDependencyMetrics metrics;
+
+    DependencyKeyDrainer(StringRedisTemplate stringRedisTemplate, ScheduledExecutorService scheduler,
+                         int pageSize, Duration pageInterval, SlotGroupedKeyDeleter slotGroupedKeyDeleter,
+                         DeleteRateLimiter rateLimiter, CacheDependencyMetrics metrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.scheduler = scheduler;
+        this.pageSize = pageSize;
+        this.pageIntervalMillis = pageInterval.toMillis();
+        this.slotGroupedKeyDeleter = slotGroupedKeyDeleter;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 清理依赖关系中分数位于 [min, max] 的业务缓存键
+     *
+     * @param table         依赖关系所属的表，用于统计删除数量
+     * @param level         新鲜度级别的名称，用于统计删除数量
+     * @param dependencyKey 依赖关系键
+     * @param min           最小分数（新鲜度）
+     * @param max           最大分数（新鲜度）
+     * @param onComplete    全部分页清理完成后的回调，清理失败时不会调用
+     */
+    void drain(String table, String level, String dependencyKey, double min, double max, Runnable onComplete) {
+        drainFrom(table, level, dependencyKey, min, max, firstPage(dependencyKey, min, max), onComplete);
+    }
+
+    /**
+     * 取出依赖关系中分数位于 [min, max] 的第一页业务缓存键
+     *
+     * @return 第一页业务缓存键
+     */
+    Set<String> firstPage(String dependencyKey, double min, double max) {
+        metrics.recordRedisCall("page-read");
+        return stringRedisTemplate.execute((RedisCallback<Set<String>>) connection ->
+                ((StringRedisConnection) connection).zRangeByScore(dependencyKey, min, max, 0, pageSize));
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * 累计删除的业务缓存数量
+     *
+     * @return 删除数量
+     */
+    long getDeletedKeyCount() {
+        return deletedKeys.sum();
+    }
+
+    private void drainFrom(String table, String level, String dependencyKey, double min, double max, Set<String> page,
+                           Runnable onComplete) {
+        try {
+            while (page != null && !page.isEmpty()) {
+                // 立即清理不等待限速，但仍然占用全局的删除配额，使延迟清理的任务相应地放慢
+                rateLimiter.reserve(page.size());
+                page = deletePage(table, level, dependencyKey, min, max, page);
+                if (pageIntervalMillis > 0 && page != null && !page.isEmpty()) {
+                    // 按照配置的间隔继续清理下一页
+                    Set<String> nextPage = page;
+                    scheduler.schedule(() -> drainFrom(table, level, dependencyKey, min, max, nextPage, onComplete),
+                            pageIntervalMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        } catch (Exception e) {
+            log.error("分页清理缓存依赖关系失败: dependencyKey={}, min={}, max={}", dependencyKey, min, max, e);
+        }
+    }
+
+    /**
+     * 删除一页业务缓存，并在同一个流水线中取出下一页
+     *
+     * @return 下一页业务缓存键，没有更多数据时返回空集合
+     */
+    @SuppressWarnings("unchecked")
+    Set<String> deletePage(String table, String level, String dependencyKey, double min, double max, Set<String> page) {
+        String[] members = page.toArray(new String[0]);
+        boolean hasMore = members.length >= pageSize;
+        if (slotGroupedKeyDeleter != null) {
+            // 集群模式下业务缓存分布在不同的槽位上，单独按节点并行删除
+            slotGroupedKeyDeleter.unlink(page);
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            if (slotGroupedKeyDeleter == null) {
+                stringConnection.unlink(members);
+            }
+            stringConnection.zRem(dependencyKey, members);
+            if (hasMore) {
+                stringConnection.zRangeByScore(dependencyKey, min, max, 0, pageSize);
+            }
+            return null;
+        });
+        deletedKeys.add(members.length);
+        metrics.recordRedisCall("page-delete");
+        metrics.recordDeletedKeys(table, level, members.length);
+        return hasMore ? (Set<String>) results.get(results.size() - 1) : Set.of();
+    }
+}
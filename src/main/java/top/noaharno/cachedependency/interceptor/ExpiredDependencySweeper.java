@@ -0,0 +1,251 @@
+package top.noaharno.cachedependency.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.DefaultStringTuple;
+import org.springframework.data.redis.connection.RedisZSetCommands.ZAddArgs;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection.StringTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.RedisScript;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+import top.noaharno.cachedependency.metrics.CacheDependencyMetrics;
+import top.noaharno.cachedependency.service.CacheDependencyService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过期依赖关系的后台清理
+ * <p/>
+ * 记录依赖关系时传入了业务缓存的过期时间的，依赖关系同时写入表的过期索引。每一轮依次分页检查每张表过期索引中已经到期的条目：
+ * 业务缓存已经不存在时，从依赖关系和过期索引中移除；业务缓存仍然存在（重新写入时被去重过滤器跳过）时，按照剩余的过期时间重新排序；
+ * 业务缓存不再过期时，只移除过期索引的条目。条目的版本号已经不是表的当前版本号时，旧版本的依赖关系已经或者正在随表的更新被清理，
+ * 同样只移除过期索引的条目，不再重新排序。移除通过脚本在表的槽位上执行，只有条目的过期时间在检查之后没有被推后时才移除，
+ * 检查之后被重新记录的依赖关系不会被误删。同一时刻只检查一页，检查速率单独限制；多个节点同时检查时结果相同，只是重复读取
+ */
+@Slf4j
+class ExpiredDependencySweeper implements AutoCloseable {
+
+    /**
+     * 按照检查时读到的过期时间，有条件地移除过期索引条目和依赖关系
+     */
+    private static final RedisScript<Long> SWEEP_EXPIRED_DEPENDENCIES_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/cache-dependency/sweep_expired_dependencies.lua"), Long.class);
+
+    /**
+     * PTTL 的返回值：业务缓存不过期
+     */
+    private static final long PERSISTENT = -1;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheDependencyService cacheDependencyService;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final List<String> tables;
+
+    private final int pageSize;
+
+    private final long intervalNanos;
+
+    private final long graceMillis;
+
+    private final DeleteRateLimiter rateLimiter;
+
+    private final CacheDependencyMetrics metrics;
+
+    /**
+     * 累计从依赖关系中移除的业务缓存键数量
+     */
+    private final LongAdder removedDependencies = new LongAdder();
+
+    /**
+     * 下一次检查，关闭时取消
+     */
+    private volatile ScheduledFuture<?> nextSweep;
+
+    private volatile boolean closed;
+
+    ExpiredDependencySweeper(StringRedisTemplate stringRedisTemplate, CacheDependencyService cacheDependencyService,
+                             ScheduledExecutorService scheduler, Collection<String> tables,
+                             CacheDependencyProperties.ExpirySweep expirySweep, CacheDependencyMetrics metrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheDependencyService = cacheDependencyService;
+        this.scheduler = scheduler;
+        this.tables = List.copyOf(tables);
+        this.pageSize = expirySweep.getPageSize();
+        this.intervalNanos = expirySweep.getInterval().toNanos();
+        this.graceMillis = expirySweep.getGrace().toMillis();
+        this.rateLimiter = new DeleteRateLimiter(expirySweep.getRateLimit());
+        this.metrics = metrics;
+    }
+
+    /**
+     * 在一个检查间隔之后开始第一轮检查
+     */
+    void start() {
+        if (!tables.isEmpty()) {
+            schedule(0, intervalNanos);
+        }
+    }
+
+    /**
+     * 累计从依赖关系中移除的业务缓存键数量
+     *
+     * @return 移除数量
+     */
+    long getRemovedDependencyCount() {
+        return removedDependencies.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> future = nextSweep;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 获得一页的检查配额后检查第 tableIndex 张表
+     */
+    private void sweep(int tableIndex) {
+        long waitNanos = rateLimiter.reserve(pageSize);
+        if (waitNanos > 0) {
+            // 超出检查配额，延后到获得配额的时间点再检查
+            nextSweep = scheduler.schedule(() -> sweepAndContinue(tableIndex), waitNanos, TimeUnit.NANOSECONDS);
+        } else {
+            sweepAndContinue(tableIndex);
+        }
+    }
+
+    private void sweepAndContinue(int tableIndex) {
+        int nextTableIndex = tableIndex;
+        try {
+            if (sweepPage(tables.get(tableIndex)) < pageSize) {
+                // 这张表已经没有到期的条目
+                nextTableIndex++;
+            }
+        } catch (Exception e) {
+            log.warn("清理过期的缓存依赖关系失败：table={}", tables.get(tableIndex), e);
+            nextTableIndex++;
+        }
+        if (nextTableIndex < tables.size()) {
+            schedule(nextTableIndex, 0);
+        } else {
+            schedule(0, intervalNanos);
+        }
+    }
+
+    private void schedule(int tableIndex, long delayNanos) {
+        if (closed) {
+            return;
+        }
+        try {
+            nextSweep = scheduler.schedule(() -> sweep(tableIndex), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // 线程池已经关闭
+            closed = true;
+        }
+    }
+
+    /**
+     * 检查一页已经到期的过期索引条目
+     *
+     * @param table 表名
+     * @return 检查的条目数量
+     */
+    private int sweepPage(String table) {
+        String expiryIndexKey = cacheDependencyService.getExpiryIndexKey(table);
+        long now = System.currentTimeMillis();
+        Set<TypedTuple<String>> entries = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(expiryIndexKey, Double.NEGATIVE_INFINITY, now - graceMillis, 0, pageSize);
+        metrics.recordRedisCall("expiry-scan");
+        if (entries == null || entries.isEmpty()) {
+            return 0;
+        }
+        List<TypedTuple<String>> page = new ArrayList<>(entries);
+        // 流水线读取表的当前版本号和业务缓存剩余的过期时间
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.get(cacheDependencyService.getVersionKey(table));
+            for (TypedTuple<String> entry : page) {
+                String member = entry.getValue();
+                stringConnection.pTtl(member.substring(member.indexOf(CacheDependencyService.EXPIRY_INDEX_SEPARATOR) + 1));
+            }
+            return null;
+        });
+        metrics.recordRedisCall("expiry-ttl");
+        Long currentVersion = parseVersion((String) results.get(0));
+
+        Set<StringTuple> rescheduled = new LinkedHashSet<>();
+        List<String> args = new ArrayList<>(page.size() * 3);
+        int superseded = 0;
+        for (int i = 0; i < page.size(); i++) {
+            String member = page.get(i).getValue();
+            int separator = member.indexOf(CacheDependencyService.EXPIRY_INDEX_SEPARATOR);
+            String version = member.substring(0, separator);
+            long ttl = (Long) results.get(i + 1);
+            Long memberVersion = parseVersion(version);
+            boolean isSuperseded = currentVersion != null && memberVersion != null && memberVersion < currentVersion;
+            if (isSuperseded) {
+                superseded++;
+            } else if (ttl > 0) {
+                rescheduled.add(new DefaultStringTuple(member, now + ttl));
+                continue;
+            }
+            args.add(member);
+            args.add(String.valueOf(page.get(i).getScore().longValue()));
+            args.add(isSuperseded || ttl == PERSISTENT ? ""
+                    : cacheDependencyService.getDependencyKey(table, version, member.substring(separator + 1)));
+        }
+        if (!rescheduled.isEmpty()) {
+            // 只推后仍然存在的条目，不会覆盖检查期间重新记录的更晚的过期时间
+            stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                    ((StringRedisConnection) connection).zAdd(expiryIndexKey, rescheduled, ZAddArgs.ifExists().gt()));
+            metrics.recordRedisCall("expiry-reschedule");
+        }
+        if (!args.isEmpty()) {
+            Long removed = stringRedisTemplate.execute(SWEEP_EXPIRED_DEPENDENCIES_SCRIPT, List.of(expiryIndexKey), args.toArray());
+            metrics.recordRedisCall("expiry-sweep");
+            if (removed != null && removed > 0) {
+                removedDependencies.add(removed);
+                metrics.recordExpiredDependencies(table, removed);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("检查过期的缓存依赖关系：table={}, checked={}, rescheduled={}, superseded={}", table, page.size(),
+                    rescheduled.size(), superseded);
+        }
+        return page.size();
+    }
+
+    /**
+     * 解析版本号
+     *
+     * @return 版本号，不存在或者格式不正确时返回 null
+     */
+    private static Long parseVersion(String version) {
+        if (version == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
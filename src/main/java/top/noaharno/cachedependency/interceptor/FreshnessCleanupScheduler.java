@@ -0,0 +1,204 @@
+package top.noaharno.cachedependency.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import top.noaharno.cachedependency.constant.CacheLevelEnum;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * 基于截止时间的缓存清理调度器
+ * <p/>
+ * 每个新鲜度级别都有一个截止时间，级别的依赖关系被拆分成若干页，均匀地分布在截止时间内，并在每个时间片内加入随机抖动，
+ * 避免大量缓存在同一时刻失效后集中回源数据库。所有分页共享一个全局的删除速率限制
+ */
+@Slf4j
+class FreshnessCleanupScheduler {
+
+    private final DependencyKeyDrainer drainer;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final DeleteRateLimiter rateLimiter;
+
+    /**
+     * 新鲜度级别 -> 截止时间
+     */
+    private final IntFunction<Duration> deadlineResolver;
+
+    /**
+     * 抖动占时间片的比例，取值范围 [0, 1]
+     */
+    private final double jitterRatio;
+
+    /**
+     * 尚未完成的清理任务数量
+     */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    /**
+     * 新鲜度级别 -> 累计删除的业务缓存数量
+     */
+    private final Map<Integer, LongAdder> deletedKeysByLevel = new ConcurrentHashMap<>();
+
+    FreshnessCleanupScheduler(DependencyKeyDrainer drainer, ScheduledExecutorService scheduler, DeleteRateLimiter rateLimiter,
+                              IntFunction<Duration> deadlineResolver, double jitterRatio) {
+        this.drainer = drainer;
+        this.scheduler = scheduler;
+        this.rateLimiter = rateLimiter;
+        this.deadlineResolver = deadlineResolver;
+        this.jitterRatio = Math.min(1, Math.max(0, jitterRatio));
+    }
+
+    /**
+     * 调度一个新鲜度级别的清理任务
+     *
+     * @param table         依赖关系所属的表
+     * @param dependencyKey 依赖关系键
+     * @param cacheLevel    新鲜度级别
+     * @param min           该级别负责的最小分数
+     * @param max           该级别负责的最大分数
+     * @param memberCount   该级别的依赖关系数量，用于计算分页的时间片
+     * @param onComplete    全部分页清理完成后的回调
+     */
+    void schedule(String table, String dependencyKey, int cacheLevel, double min, double max, long memberCount,
+                  Runnable onComplete) {
+        long deadlineNanos = deadlineResolver.apply(cacheLevel).toNanos();
+        long pages = Math.max(1, (memberCount + drainer.getPageSize() - 1) / drainer.getPageSize());
+        SpreadTask task = new SpreadTask(table, dependencyKey, cacheLevel, min, max, deadlineNanos / pages, onComplete);
+        pendingTasks.incrementAndGet();
+        scheduler.schedule(task::step, task.jitterNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 尚未完成的清理任务数量
+     *
+     * @return 任务数量
+     */
+    int getPendingTaskCount() {
+        return pendingTasks.get();
+    }
+
+    /**
+     * 某个新鲜度级别累计删除的业务缓存数量
+     *
+     * @param cacheLevel 新鲜度级别
+     * @return 删除数量
+     */
+    long getDeletedKeyCount(int cacheLevel) {
+        LongAdder deletedKeys = deletedKeysByLevel.get(cacheLevel);
+        return deletedKeys == null ? 0 : deletedKeys.sum();
+    }
+
+    /**
+     * 在截止时间内均匀分布的分页清理任务
+     */
+    private class SpreadTask {
+
+        private final String table;
+
+        private final String dependencyKey;
+
+        private final int cacheLevel;
+
+        private final double min;
+
+        private final double max;
+
+        /**
+         * 每一页的时间片
+         */
+        private final long slotNanos;
+
+        private final Runnable onComplete;
+
+        private final long startedAt = System.nanoTime();
+
+        private int pageIndex;
+
+        private long deletedKeys;
+
+        /**
+         * 下一页业务缓存键，为 null 时需要重新读取
+         */
+        private Set<String> nextPage;
+
+        private SpreadTask(String table, String dependencyKey, int cacheLevel, double min, double max, long slotNanos,
+                           Runnable onComplete) {
+            this.table = table;
+            this.dependencyKey = dependencyKey;
+            this.cacheLevel = cacheLevel;
+            this.min = min;
+            this.max = max;
+            this.slotNanos = slotNanos;
+            this.onComplete = onComplete;
+        }
+
+        private void step() {
+            try {
+                Set<String> page = nextPage == null ? drainer.firstPage(dependencyKey, min, max) : nextPage;
+                if (page == null || page.isEmpty()) {
+                    complete();
+                    return;
+                }
+                long waitNanos = rateLimiter.reserve(page.size());
+                if (waitNanos > 0) {
+                    // 超出全局删除配额，延后到获得配额的时间点再删除
+                    scheduler.schedule(() -> deleteAndContinue(page), waitNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    deleteAndContinue(page);
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void deleteAndContinue(Set<String> page) {
+            try {
+                nextPage = drainer.deletePage(table, CacheLevelEnum.fromLevel(cacheLevel).name(), dependencyKey, min, max, page);
+                deletedKeys += page.size();
+                deletedKeysByLevel.computeIfAbsent(cacheLevel, level -> new LongAdder()).add(page.size());
+                pageIndex++;
+                if (nextPage.isEmpty()) {
+                    complete();
+                    return;
+                }
+                // 下一页在它自己的时间片内执行
+                long delay = startedAt + pageIndex * slotNanos + jitterNanos() - System.nanoTime();
+                scheduler.schedule(this::step, Math.max(0, delay), TimeUnit.NANOSECONDS);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private long jitterNanos() {
+            long bound = (long) (slotNanos * jitterRatio);
+            return bound > 0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+        }
+
+        private void complete() {
+            pendingTasks.decrementAndGet();
+            if (log.isDebugEnabled()) {
+                long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+                log.debug("延迟清理缓存依赖关系完成: dependencyKey={}, level={}, keys={}, elapsed={}ms, rate={}/s",
+                        dependencyKey, cacheLevel, deletedKeys, elapsedMillis, deletedKeys * 1000 / elapsedMillis);
+            }
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        }
+
+        private void fail(Exception e) {
+            pendingTasks.decrementAndGet();
+            log.error("延迟清理缓存依赖关系失败: dependencyKey={}, level={}", dependencyKey, cacheLevel, e);
+        }
+    }
+}
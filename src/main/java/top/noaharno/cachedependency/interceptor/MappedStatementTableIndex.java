@@ -0,0 +1,142 @@
+package top.noaharno.cachedependency.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil.SqlAnalysis;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * MappedStatement 表名索引
+ * <p/>
+ * 启动时遍历 MyBatis 中所有的写操作 MappedStatement，对静态 SQL 并行预解析出涉及的表和影响的行，冻结成不可变的索引，
+ * 拦截器优先查询索引，避免发布后每条写 SQL 第一次执行时才解析。动态 SQL 在不同参数下涉及的表可能不同，仍在执行时解析
+ */
+@Slf4j
+public class MappedStatementTableIndex implements SmartInitializingSingleton {
+
+    private final ObjectProvider<SqlSessionFactory> sqlSessionFactories;
+
+    private final CacheDependencyProperties properties;
+
+    /**
+     * MappedStatement 的 ID -> 分析结果，启动完成前为空
+     */
+    private volatile Map<String, SqlAnalysis> index = Map.of();
+
+    public MappedStatementTableIndex(ObjectProvider<SqlSessionFactory> sqlSessionFactories, CacheDependencyProperties properties) {
+        this.sqlSessionFactories = sqlSessionFactories;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.nanoTime();
+        List<MappedStatement> statements = new ArrayList<>();
+        sqlSessionFactories.orderedStream().forEach(factory -> statements.addAll(getStaticWriteStatements(factory.getConfiguration())));
+        if (statements.isEmpty()) {
+            return;
+        }
+
+        Map<String, SqlAnalysis> analyzed;
+        try (ForkJoinPool pool = new ForkJoinPool(Math.min(statements.size(), Runtime.getRuntime().availableProcessors()))) {
+            analyzed = pool.submit(() -> statements.parallelStream()
+                    .map(ms -> Map.entry(ms.getId(), Optional.ofNullable(analyze(ms.getBoundSql(null).getSql()))))
+                    .filter(entry -> entry.getValue().isPresent())
+                    .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> entry.getValue().get(), (first, second) -> first))
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("预解析 MappedStatement 被中断，将在执行时解析 SQL");
+            return;
+        } catch (ExecutionException e) {
+            log.warn("预解析 MappedStatement 失败，将在执行时解析 SQL", e.getCause());
+            return;
+        }
+        this.index = analyzed;
+        log.info("预解析 MappedStatement 完成：共 {} 条静态写 SQL，成功 {} 条，耗时 {}ms",
+                statements.size(), analyzed.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        warnUnconfiguredTables(analyzed);
+    }
+
+    /**
+     * 获取 MappedStatement 的分析结果
+     *
+     * @param statementId MappedStatement 的 ID
+     * @return 分析结果，没有预解析结果时返回 null
+     */
+    public SqlAnalysis getAnalysis(String statementId) {
+        return index.get(statementId);
+    }
+
+    /**
+     * 已经预解析的 MappedStatement 数量
+     *
+     * @return 数量
+     */
+    public int size() {
+        return index.size();
+    }
+
+    private SqlAnalysis analyze(String sql) {
+        return SqlAnalysisUtil.analyze(sql, properties.getRowKeyColumns(), properties.getTrackedColumns().keySet());
+    }
+
+    /**
+     * 获取静态 SQL 的写操作 MappedStatement
+     */
+    private static List<MappedStatement> getStaticWriteStatements(Configuration configuration) {
+        List<MappedStatement> statements = new ArrayList<>();
+        for (String name : configuration.getMappedStatementNames()) {
+            // 同一个 MappedStatement 还会以不带命名空间的短名称注册一次，短名称冲突时无法获取，只处理完整的 ID
+            if (!name.contains(".")) {
+                continue;
+            }
+            MappedStatement ms = configuration.getMappedStatement(name, false);
+            if (!name.equals(ms.getId()) || !isWrite(ms.getSqlCommandType()) || !isStatic(ms.getSqlSource())) {
+                continue;
+            }
+            statements.add(ms);
+        }
+        return statements;
+    }
+
+    private static boolean isWrite(SqlCommandType sqlCommandType) {
+        return sqlCommandType == SqlCommandType.INSERT || sqlCommandType == SqlCommandType.UPDATE
+                || sqlCommandType == SqlCommandType.DELETE;
+    }
+
+    private static boolean isStatic(SqlSource sqlSource) {
+        return sqlSource instanceof RawSqlSource || sqlSource instanceof StaticSqlSource;
+    }
+
+    /**
+     * 写操作涉及未配置的表时，该表上的缓存不会被清理，启动时给出提示
+     */
+    private void warnUnconfiguredTables(Map<String, SqlAnalysis> analyzed) {
+        Map<String, List<String>> unconfigured = new TreeMap<>();
+        analyzed.forEach((statementId, analysis) -> {
+            for (String table : analysis.tables()) {
+                if (!properties.getTables().contains(table)) {
+                    unconfigured.computeIfAbsent(table, key -> new ArrayList<>()).add(statementId);
+                }
+            }
+        });
+        unconfigured.forEach((table, statementIds) ->
+                log.warn("表 {} 没有配置在 cache.dependency.tables 中，以下写操作不会清理它的缓存：{}", table, statementIds));
+    }
+}
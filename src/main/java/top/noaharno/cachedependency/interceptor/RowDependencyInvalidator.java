@@ -0,0 +1,44 @@
+package top.noaharno.cachedependency.interceptor;
+
+import top.noaharno.cachedependency.service.CacheDependencyService;
+
+import java.util.List;
+
+/**
+ * 清理行级依赖关系
+ * <p/>
+ * 行级依赖关系不区分版本，每一行一个 ZSET，并用一个 SET 记录存在依赖关系的行。
+ * 只修改部分行时只摘下这些行，无法确定影响的行时分页弹出行索引中的所有行。
+ * 摘下的行在同一个脚本中从行索引中移除并合并到快照中，由拦截器按照新鲜度级别清理快照，
+ * 并发写入的依赖关系要么在快照中被清理，要么仍然在行索引中
+ */
+class RowDependencyInvalidator {
+
+    private final CacheDependencyService cacheDependencyService;
+
+    private final DependencyDetacher dependencyDetacher;
+
+    private final int pageSize;
+
+    RowDependencyInvalidator(CacheDependencyService cacheDependencyService, DependencyDetacher dependencyDetacher, int pageSize) {
+        this.cacheDependencyService = cacheDependencyService;
+        this.dependencyDetacher = dependencyDetacher;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * 摘下一张表上变化的行的依赖关系
+     *
+     * @param change 表上的变化
+     * @return 需要清理的快照键
+     */
+    List<String> detach(TableChange change) {
+        String table = change.table();
+        String rowIndexKey = cacheDependencyService.getRowIndexKey(table);
+        String keyPrefix = cacheDependencyService.getRowDependencyKeyPrefix(table);
+        if (change.isAllRows()) {
+            return dependencyDetacher.detachAll(table, rowIndexKey, keyPrefix, "row-detach");
+        }
+        return dependencyDetacher.detach(table, rowIndexKey, keyPrefix, change.rowKeys(), pageSize, "row-detach");
+    }
+}
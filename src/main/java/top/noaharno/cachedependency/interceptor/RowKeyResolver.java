@@ -0,0 +1,57 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.Configuration;
+import top.noaharno.cachedependency.util.RowKeyPlan;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 根据绑定参数解析写操作影响的行的主键，取值方式与 MyBatis 的 DefaultParameterHandler 一致
+ */
+final class RowKeyResolver {
+
+    private RowKeyResolver() {
+    }
+
+    /**
+     * 解析影响的行
+     *
+     * @param plan          SQL 分析出的主键来源
+     * @param configuration MyBatis 配置
+     * @param boundSql      绑定后的 SQL，主键全部是字面量时可以为 null
+     * @return 主键集合，任意一个参数无法取值时返回 null，由调用方按整表清理
+     */
+    static Set<String> resolve(RowKeyPlan plan, Configuration configuration, BoundSql boundSql) {
+        Set<String> rowKeys = new LinkedHashSet<>(plan.literals());
+        if (plan.parameterIndexes().isEmpty()) {
+            return rowKeys;
+        }
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        Object parameterObject = boundSql.getParameterObject();
+        for (int index : plan.parameterIndexes()) {
+            if (index < 1 || index > parameterMappings.size()) {
+                return null;
+            }
+            String property = parameterMappings.get(index - 1).getProperty();
+            Object value;
+            if (boundSql.hasAdditionalParameter(property)) {
+                value = boundSql.getAdditionalParameter(property);
+            } else if (parameterObject == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+                value = parameterObject;
+            } else {
+                value = configuration.newMetaObject(parameterObject).getValue(property);
+            }
+            if (value == null) {
+                return null;
+            }
+            rowKeys.add(String.valueOf(value));
+        }
+        return rowKeys;
+    }
+}
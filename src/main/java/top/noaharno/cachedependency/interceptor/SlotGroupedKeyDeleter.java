@@ -0,0 +1,85 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Redis Cluster 下的业务缓存批量删除
+ * <p/>
+ * 先按槽位对业务缓存键分组，保证每条 UNLINK 命令只涉及一个槽位，再按槽位所在的节点归并，
+ * 每个节点使用各自的流水线并行删除，删除吞吐随分片数量线性扩展
+ */
+class SlotGroupedKeyDeleter {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 每个节点的删除任务运行在独立的虚拟线程上，空闲时不占用任何线程
+     */
+    private final ExecutorService nodeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    SlotGroupedKeyDeleter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 删除业务缓存
+     *
+     * @param keys 业务缓存键
+     */
+    void unlink(Collection<String> keys) {
+        Map<Integer, List<String>> slotKeys = new HashMap<>();
+        for (String key : keys) {
+            slotKeys.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        Map<RedisClusterNode, List<List<String>>> nodeKeys = new HashMap<>();
+        try (RedisClusterConnection connection = stringRedisTemplate.getRequiredConnectionFactory().getClusterConnection()) {
+            // 槽位到节点的映射来自客户端缓存的集群拓扑，不会产生额外的网络请求
+            for (Map.Entry<Integer, List<String>> entry : slotKeys.entrySet()) {
+                nodeKeys.computeIfAbsent(connection.clusterGetNodeForSlot(entry.getKey()), node -> new ArrayList<>())
+                        .add(entry.getValue());
+            }
+        }
+        if (nodeKeys.size() == 1) {
+            unlinkOnNode(nodeKeys.values().iterator().next());
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(nodeKeys.size());
+        for (List<List<String>> slotGroups : nodeKeys.values()) {
+            futures.add(nodeExecutor.submit(() -> unlinkOnNode(slotGroups)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("删除业务缓存时被中断", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("删除业务缓存失败", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 在一个流水线中删除同一个节点上的所有槽位分组
+     */
+    private void unlinkOnNode(List<List<String>> slotGroups) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (List<String> slotGroup : slotGroups) {
+                stringConnection.unlink(slotGroup.toArray(new String[0]));
+            }
+            return null;
+        });
+    }
+}
@@ -1,18 +1,34 @@
 package top.noaharno.cachedependency.interceptor;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.Intercepts;
 import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
 import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import top.noaharno.cachedependency.config.CacheDependencyProperties;
 import top.noaharno.cachedependency.constant.CacheLevelEnum;
+import top.noaharno.cachedependency.constant.InvalidationModeEnum;
+import top.noaharno.cachedependency.metrics.CacheDependencyMetrics;
 import top.noaharno.cachedependency.service.CacheDependencyService;
-import top.noaharno.cachedependency.util.SqlAnalysisUtil;
+import top.noaharno.cachedependency.service.TableVersionCache;
+import top.noaharno.cachedependency.store.DependencyStore;
+import top.noaharno.cachedependency.util.RowKeyPlan;
+import top.noaharno.cachedependency.util.SqlAnalysisCache;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil.ParseCacheStats;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil.SqlAnalysis;
 
+import java.lang.reflect.Proxy;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -20,13 +36,19 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * 表分析拦截器
  * <p/>
- * 拦截所有执行的 UPDATE SQL，解析出它的表名，并且清空对应的 Redis 缓存依赖关系
+ * 拦截所有执行的 UPDATE SQL，解析出它的表名，并且清空对应的 Redis 缓存依赖关系。
+ * 批量执行器（ExecutorType.BATCH）的 update 只是攒批，语句在 flushStatements、commit、rollback、close 时才发送到数据库，
+ * 因此只收集涉及的表，在这些时机合并后清理一次
  */
 @Intercepts({
-        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "flushStatements", args = {}),
+        @Signature(type = Executor.class, method = "commit", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "rollback", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "close", args = {boolean.class})
 })
 @Slf4j
-public class TableAnalysisInterceptor implements Interceptor {
+public class TableAnalysisInterceptor implements Interceptor, DisposableBean {
 
     private final StringRedisTemplate stringRedisTemplate;
 
@@ -37,159 +59,635 @@ public class TableAnalysisInterceptor implements Interceptor {
      */
     private final ScheduledExecutorService scheduledExecutorService;
 
+    /**
+     * 并行清理依赖关系分片的线程池，写线程等待所有分片清理完成，不与延迟清理共用线程池
+     */
+    private final ExecutorService immediateCleanupExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
     private final CacheDependencyProperties properties;
 
     /**
-     * 用于跟踪正在处理的表删除任务
+     * 事务感知模式下，用于收集事务内涉及的表，未开启时为 null
+     */
+    private final TransactionalInvalidationCollector transactionalCollector;
+
+    /**
+     * 异步模式下的清理调度器，未开启时为 null
+     */
+    private final AsyncInvalidationDispatcher asyncDispatcher;
+
+    /**
+     * 写操作合并器，未配置合并窗口时为 null
+     */
+    private final WriteCoalescer writeCoalescer;
+
+    /**
+     * 分页清理依赖关系
+     */
+    private final DependencyKeyDrainer dependencyKeyDrainer;
+
+    /**
+     * Redis Cluster 模式下按槽位分组删除业务缓存，非集群模式时为 null
+     */
+    private final SlotGroupedKeyDeleter slotGroupedKeyDeleter;
+
+    /**
+     * 按截止时间分布清理非秒级新鲜度的业务缓存
+     */
+    private final FreshnessCleanupScheduler freshnessCleanupScheduler;
+
+    /**
+     * 启动时预解析的 MappedStatement 表名索引，未开启时为 null
+     */
+    private final MappedStatementTableIndex mappedStatementTableIndex;
+
+    /**
+     * 执行时解析的 SQL 的缓存
+     */
+    private final SqlAnalysisCache sqlAnalysisCache;
+
+    /**
+     * 清理行级依赖关系
      */
-    private final Map<String, ScheduledFuture<?>> pendingCleanupTasks = new ConcurrentHashMap<>();
+    private final RowDependencyInvalidator rowDependencyInvalidator;
+
+    /**
+     * 清理列级依赖关系
+     */
+    private final ColumnDependencyInvalidator columnDependencyInvalidator;
+
+    /**
+     * 批量执行器 -> 攒批期间涉及的表上的变化，执行器只在一个线程中使用
+     */
+    private final Map<Object, Map<String, TableChange>> pendingBatchChanges = new ConcurrentHashMap<>();
+
+    /**
+     * 被包装的执行器 -> 是否为批量执行器，执行器的包装在创建后不再变化，只需要反射拆开一次。
+     * 执行器随 SqlSession 创建和关闭，使用弱引用避免持有已经关闭的执行器
+     */
+    private final Map<Object, Boolean> wrappedBatchExecutors = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 过期依赖关系的后台清理，未开启时为 null
+     */
+    private final ExpiredDependencySweeper expiredDependencySweeper;
+
+    /**
+     * 组件的指标，未配置时不记录
+     */
+    private final CacheDependencyMetrics metrics;
 
     public TableAnalysisInterceptor(StringRedisTemplate stringRedisTemplate,
                                     CacheDependencyService cacheDependencyService,
                                     CacheDependencyProperties properties) {
+        this(stringRedisTemplate, cacheDependencyService, properties, null);
+    }
+
+    public TableAnalysisInterceptor(StringRedisTemplate stringRedisTemplate,
+                                    CacheDependencyService cacheDependencyService,
+                                    CacheDependencyProperties properties,
+                                    MappedStatementTableIndex mappedStatementTableIndex) {
+        this(stringRedisTemplate, cacheDependencyService, properties, mappedStatementTableIndex, CacheDependencyMetrics.NOOP);
+    }
+
+    public TableAnalysisInterceptor(StringRedisTemplate stringRedisTemplate,
+                                    CacheDependencyService cacheDependencyService,
+                                    CacheDependencyProperties properties,
+                                    MappedStatementTableIndex mappedStatementTableIndex,
+                                    CacheDependencyMetrics metrics) {
         this.stringRedisTemplate = stringRedisTemplate;
         this.cacheDependencyService = cacheDependencyService;
         this.properties = properties;
+        this.mappedStatementTableIndex = mappedStatementTableIndex;
+        this.metrics = metrics;
+        this.sqlAnalysisCache = new SqlAnalysisCache(properties.getParseCacheMaxSize(), properties.getRowKeyColumns(),
+                properties.getTrackedColumns().keySet());
         // 初始化线程池
         this.scheduledExecutorService = Executors.newScheduledThreadPool(properties.getCleanThreadPoolSize());
+        this.slotGroupedKeyDeleter = properties.getCluster().isEnabled() ? new SlotGroupedKeyDeleter(stringRedisTemplate) : null;
+        CacheDependencyProperties.Schedule schedule = properties.getSchedule();
+        DeleteRateLimiter deleteRateLimiter = new DeleteRateLimiter(schedule.getDeleteRateLimit());
+        this.dependencyKeyDrainer = new DependencyKeyDrainer(stringRedisTemplate, scheduledExecutorService,
+                properties.getCleanPageSize(), properties.getCleanPageInterval(), slotGroupedKeyDeleter, deleteRateLimiter,
+                metrics);
+        this.freshnessCleanupScheduler = new FreshnessCleanupScheduler(dependencyKeyDrainer, scheduledExecutorService,
+                deleteRateLimiter, level -> schedule.getDeadline(CacheLevelEnum.fromLevel(level)), schedule.getJitterRatio());
+        DependencyDetacher dependencyDetacher = new DependencyDetacher(stringRedisTemplate, cacheDependencyService,
+                properties.getCleanPageSize(), metrics);
+        this.rowDependencyInvalidator = new RowDependencyInvalidator(cacheDependencyService, dependencyDetacher,
+                properties.getCleanPageSize());
+        this.columnDependencyInvalidator = new ColumnDependencyInvalidator(stringRedisTemplate, cacheDependencyService,
+                dependencyDetacher, metrics);
+        CacheDependencyProperties.Async async = properties.getAsync();
+        this.asyncDispatcher = async.isEnabled()
+                ? new AsyncInvalidationDispatcher(async.getQueueCapacity(), async.getMaxBatchSize(), async.getMaxConcurrency(),
+                        async.getBackpressure(), this::cleanCacheDependency)
+                : null;
+        CacheDependencyProperties.Coalesce coalesce = properties.getCoalesce();
+        boolean coalesceEnabled = !coalesce.getWindow().isZero() || !coalesce.getTableWindows().isEmpty();
+        this.writeCoalescer = coalesceEnabled
+                ? new WriteCoalescer(coalesce::getWindow, this::dispatch) : null;
+        this.transactionalCollector = properties.isTransactionAware()
+                ? new TransactionalInvalidationCollector(this::invalidate) : null;
+        // 自定义的存储不使用 Redis 中的过期索引
+        if (properties.getExpirySweep().isEnabled() && cacheDependencyService.getDependencyStore() == null) {
+            this.expiredDependencySweeper = new ExpiredDependencySweeper(stringRedisTemplate, cacheDependencyService,
+                    scheduledExecutorService, properties.getTables(), properties.getExpirySweep(), metrics);
+            expiredDependencySweeper.start();
+        } else {
+            this.expiredDependencySweeper = null;
+        }
     }
 
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
+        if (!"update".equals(invocation.getMethod().getName())) {
+            // 批量执行器攒批的语句在这些时机发送到数据库（回滚和关闭时可能已经有一部分语句被查询触发执行），统一清理一次
+            flushBatchChanges(invocation.getTarget());
+            if ("close".equals(invocation.getMethod().getName())) {
+                wrappedBatchExecutors.remove(invocation.getTarget());
+            }
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
         MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        Object parameter = invocation.getArgs()[1];
         String id = ms.getId();
-        String sql = ms.getSqlSource().getBoundSql(invocation.getArgs()[1]).getSql();
-        // 获取 SQL 中涉及的表
-        Set<String> tableSet = SqlAnalysisUtil.getTableSet(id, sql);
+        // 获取 SQL 中涉及的表，优先使用启动时预解析的结果
+        BoundSql boundSql = null;
+        SqlAnalysis analysis = mappedStatementTableIndex == null ? null : mappedStatementTableIndex.getAnalysis(id);
+        if (analysis == null) {
+            boundSql = ms.getSqlSource().getBoundSql(parameter);
+            analysis = sqlAnalysisCache.getAnalysis(id, boundSql.getSql());
+        }
+        // 只保留存在缓存依赖关系的表，避免无意义的入队和事务同步注册
+        List<TableChange> changes = new ArrayList<>(analysis.tables().size());
+        for (String table : analysis.tables()) {
+            if (!properties.getTables().contains(table)) {
+                continue;
+            }
+            RowKeyPlan rowKeyPlan = analysis.rowKeyPlans().get(table);
+            Set<String> rowKeys = null;
+            if (rowKeyPlan != null) {
+                if (boundSql == null && !rowKeyPlan.parameterIndexes().isEmpty()) {
+                    boundSql = ms.getSqlSource().getBoundSql(parameter);
+                }
+                rowKeys = RowKeyResolver.resolve(rowKeyPlan, ms.getConfiguration(), boundSql);
+            }
+            // 无法确定影响的行时，清理所有行；不是单表 UPDATE 时，视为修改了所有列
+            changes.add(TableChange.of(table, rowKeys, analysis.updatedColumns().get(table)));
+        }
         // 清空缓存依赖关系
-        cleanCacheDependency(tableSet);
+        if (!changes.isEmpty()
+                && (transactionalCollector == null || !transactionalCollector.collect(changes))) {
+            if (isBatchExecutor(invocation.getTarget())) {
+                // 批量执行器只攒批，同一批次内的写操作合并后清理一次
+                TableChange.mergeInto(pendingBatchChanges.computeIfAbsent(invocation.getTarget(), key -> new LinkedHashMap<>()), changes);
+            } else {
+                invalidate(changes);
+            }
+        }
+        metrics.recordIntercept(System.nanoTime() - start);
         return invocation.proceed();
     }
 
+    /**
+     * 清理批量执行器攒批期间涉及的表
+     *
+     * @param executor 执行器
+     */
+    private void flushBatchChanges(Object executor) {
+        if (pendingBatchChanges.isEmpty()) {
+            return;
+        }
+        Map<String, TableChange> changes = pendingBatchChanges.remove(executor);
+        if (changes != null) {
+            invalidate(changes.values());
+        }
+    }
+
+    /**
+     * 判断执行器是否为批量执行器，被其它插件代理或者被二级缓存装饰的执行器按实例缓存判断结果
+     *
+     * @param executor 拦截的执行器
+     * @return 是批量执行器时返回 true
+     */
+    private boolean isBatchExecutor(Object executor) {
+        if (executor instanceof BatchExecutor) {
+            return true;
+        }
+        if (!(executor instanceof CachingExecutor) && !Proxy.isProxyClass(executor.getClass())) {
+            return false;
+        }
+        Boolean batch = wrappedBatchExecutors.get(executor);
+        if (batch == null) {
+            batch = unwrapBatchExecutor(executor);
+            wrappedBatchExecutors.put(executor, batch);
+        }
+        return batch;
+    }
+
+    /**
+     * 依次拆开其它插件的代理和二级缓存的装饰，判断最内层的执行器是否为批量执行器
+     *
+     * @param executor 拦截的执行器
+     * @return 是批量执行器时返回 true
+     */
+    private static boolean unwrapBatchExecutor(Object executor) {
+        Object current = executor;
+        while (true) {
+            if (current instanceof BatchExecutor) {
+                return true;
+            }
+            if (current instanceof CachingExecutor) {
+                current = SystemMetaObject.forObject(current).getValue("delegate");
+            } else if (current != null && Proxy.isProxyClass(current.getClass())
+                    && Proxy.getInvocationHandler(current) instanceof Plugin plugin) {
+                current = SystemMetaObject.forObject(plugin).getValue("target");
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 触发缓存清理，配置了合并窗口的表会等到窗口结束时再清理
+     *
+     * @param changes 表上的变化
+     */
+    private void invalidate(Collection<TableChange> changes) {
+        Collection<TableChange> uncoalescedChanges = writeCoalescer == null ? changes : writeCoalescer.offer(changes);
+        if (!uncoalescedChanges.isEmpty()) {
+            dispatch(uncoalescedChanges);
+        }
+    }
+
+    /**
+     * 执行缓存清理，异步模式下只入队，否则在当前线程清理
+     *
+     * @param changes 表上的变化
+     */
+    private void dispatch(Collection<TableChange> changes) {
+        if (asyncDispatcher != null) {
+            asyncDispatcher.submit(changes);
+        } else {
+            cleanCacheDependency(changes);
+        }
+    }
+
+    /**
+     * 异步清理队列中等待处理的表数量，未开启异步清理时为 0
+     *
+     * @return 队列深度
+     */
+    public int getAsyncQueueDepth() {
+        return asyncDispatcher == null ? 0 : asyncDispatcher.getQueueDepth();
+    }
+
+    /**
+     * 尚未完成的延迟清理任务数量
+     *
+     * @return 任务数量
+     */
+    public int getPendingCleanupTaskCount() {
+        return freshnessCleanupScheduler.getPendingTaskCount();
+    }
+
+    /**
+     * SQL 解析缓存的统计信息
+     *
+     * @return 统计信息
+     */
+    public ParseCacheStats getParseCacheStats() {
+        return sqlAnalysisCache.getStats();
+    }
+
+    /**
+     * 调度线程池中等待执行的任务数量，包括延迟清理的分页、分页间隔和过期依赖关系清理
+     *
+     * @return 队列深度
+     */
+    public int getSchedulerQueueDepth() {
+        return ((ThreadPoolExecutor) scheduledExecutorService).getQueue().size();
+    }
+
+    /**
+     * 累计删除的业务缓存数量
+     *
+     * @return 删除数量
+     */
+    public long getDeletedKeyCount() {
+        return dependencyKeyDrainer.getDeletedKeyCount();
+    }
+
+    /**
+     * 某个新鲜度级别通过延迟清理累计删除的业务缓存数量
+     *
+     * @param cacheLevel 新鲜度级别
+     * @return 删除数量
+     */
+    public long getDeletedKeyCount(CacheLevelEnum cacheLevel) {
+        return freshnessCleanupScheduler.getDeletedKeyCount(cacheLevel.getLevel());
+    }
+
+    /**
+     * 因业务缓存过期而从依赖关系中移除的业务缓存键数量，未开启过期依赖关系清理时为 0
+     *
+     * @return 移除数量
+     */
+    public long getExpiredDependencyCount() {
+        return expiredDependencySweeper == null ? 0 : expiredDependencySweeper.getRemovedDependencyCount();
+    }
+
 
     /**
      * 清空缓存依赖关系
+     * <p/>
+     * 第一次流水线批量自增所有表的版本号，第二次流水线统计所有表上一版本各新鲜度级别的依赖关系数量，
+     * 之后每个级别的业务缓存都分页清理，旧版本的 ZSET 在所有级别清理完成后再通过 UNLINK 惰性释放。
+     * 表级依赖关系无论修改了哪些行都会被清理，配置了主键列的表还会清理变化的行（或者所有行）的行级依赖关系，
+     * 跟踪了列的表还会清理与修改的列有交集的列级依赖关系。行级、列级依赖关系先从索引中摘下成为快照，
+     * 与旧版本的 ZSET 一样按照新鲜度级别的截止时间和全局删除速率清理。LAZY 模式下只自增版本号并广播，不清理表级依赖关系。
+     * 配置了自定义的依赖关系存储时，交给存储清理
      *
-     * @param tableSet 被清空的表集合
+     * @param changes 表上的变化
      */
-    private void cleanCacheDependency(Set<String> tableSet) {
+    private void cleanCacheDependency(Collection<TableChange> changes) {
         try {
-            // 创建两个任务列表：一个是立即执行的（秒级新鲜度），另一个是延迟执行的（其他级别）
-            List<CacheCleanupTask> immediateTasks = new ArrayList<>();
-            PriorityQueue<CacheCleanupTask> delayedTasks = new PriorityQueue<>();
-
-            // 为每个表创建清理任务
-            for (String table : tableSet) {
-                if (!properties.getTables().contains(table)) {
+            Map<String, TableChange> changesByTable = new LinkedHashMap<>();
+            for (TableChange change : changes) {
+                if (!properties.getTables().contains(change.table())) {
                     // 不包含该表，表明该表不存在缓存依赖关系，直接跳过，可以避免频繁访问 redis
                     continue;
                 }
+                changesByTable.merge(change.table(), change, TableChange::merge);
+            }
+            if (changesByTable.isEmpty()) {
+                return;
+            }
+            List<String> tables = new ArrayList<>(changesByTable.keySet());
+            tables.forEach(metrics::recordInvalidation);
+            DependencyStore dependencyStore = cacheDependencyService.getDependencyStore();
+            if (dependencyStore != null) {
+                // 自定义的存储只有表级依赖关系，由存储自增版本号并删除业务缓存
+                for (String table : tables) {
+                    metrics.recordDeletedKeys(table, CacheDependencyMetrics.LEVEL_ALL, (int) dependencyStore.invalidate(table));
+                }
+                return;
+            }
 
-                // 取消该表之前的清理任务（如果有的话）
-                ScheduledFuture<?> previousTask = pendingCleanupTasks.remove(table);
-                if (previousTask != null && !previousTask.isDone()) {
-                    previousTask.cancel(false);
+            // 流水线自增所有表的版本号
+            List<Object> incrementedVersions = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (String table : tables) {
+                    stringConnection.incr(cacheDependencyService.getVersionKey(table));
                 }
+                return null;
+            });
+            metrics.recordRedisCall("version-incr");
 
-                // 自增版本号
-                long incrementedVersion = stringRedisTemplate.opsForValue().increment(cacheDependencyService.getVersionKey(table));
-                if (incrementedVersion == 1) {
-                    // 版本号为 1 的时候，表示一开始缓存里面没有任何依赖关系，不需要进行任何处理
-                    continue;
+            // 行级、列级依赖关系从索引中摘下成为快照，与旧版本的表级依赖关系一起按照新鲜度级别清理
+            List<String> drainTables = new ArrayList<>();
+            List<String> drainKeys = new ArrayList<>();
+            for (TableChange change : changesByTable.values()) {
+                if (properties.getRowKeyColumns().containsKey(change.table())) {
+                    try {
+                        for (String snapshotKey : rowDependencyInvalidator.detach(change)) {
+                            drainTables.add(change.table());
+                            drainKeys.add(snapshotKey);
+                        }
+                    } catch (Exception e) {
+                        log.warn("摘下行级缓存依赖关系失败：table={}", change.table(), e);
+                    }
+                }
+                if (columnDependencyInvalidator.isTracked(change.table())) {
+                    try {
+                        for (String snapshotKey : columnDependencyInvalidator.detach(change)) {
+                            drainTables.add(change.table());
+                            drainKeys.add(snapshotKey);
+                        }
+                    } catch (Exception e) {
+                        log.warn("摘下列级缓存依赖关系失败：table={}", change.table(), e);
+                    }
+                }
+            }
+
+            // 版本号为 1 的时候，表示一开始缓存里面没有任何依赖关系，不需要进行任何处理；
+            // LAZY 模式下业务缓存在读取时校验版本号，自增版本号后不需要清理表级依赖关系
+            boolean eager = properties.getInvalidationMode() == InvalidationModeEnum.EAGER;
+            List<String> changedTables = new ArrayList<>(tables.size());
+            List<Long> previousVersions = new ArrayList<>(tables.size());
+            for (int i = 0; i < tables.size(); i++) {
+                long incrementedVersion = (Long) incrementedVersions.get(i);
+                cacheDependencyService.onVersionChanged(tables.get(i), incrementedVersion);
+                if (eager && incrementedVersion > 1) {
+                    changedTables.add(tables.get(i));
+                    previousVersions.add(incrementedVersion - 1);
+                    for (String dependencyKey : cacheDependencyService.getDependencyKeys(tables.get(i), String.valueOf(incrementedVersion - 1))) {
+                        drainTables.add(tables.get(i));
+                        drainKeys.add(dependencyKey);
+                    }
                 }
-                Long previousVersion = incrementedVersion - 1;
-
-                // 为每个新鲜度级别创建任务
-                for (CacheLevelEnum cacheLevel : CacheLevelEnum.getSortedValues()) {
-                    // 获取到当前缓存级别的缓存依赖关系
-                    Set<String> sortedMembers = stringRedisTemplate.opsForZSet().rangeByScore(
-                            cacheDependencyService.getDependencyKey(table, String.valueOf(previousVersion)),
-                            cacheLevel.getLevel(),
-                            cacheLevel.getLevel()
-                    );
-                    // 如果没有依赖关系，则跳过，避免占用优先级队列
-                    if (sortedMembers.isEmpty()) {
-                        continue;
+            }
+            boolean broadcast = properties.getVersionCache().isEnabled();
+            if (drainKeys.isEmpty() && !broadcast) {
+                return;
+            }
+
+            // 流水线广播新的版本号，并统计每个需要清理的依赖关系键（上一个版本的每个分片、行级和列级依赖关系的快照）各新鲜度级别的数量
+            CacheLevelEnum[] cacheLevels = CacheLevelEnum.getSortedValues();
+            List<Object> levelCounts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                if (broadcast) {
+                    for (int i = 0; i < tables.size(); i++) {
+                        stringConnection.publish(properties.getVersionCache().getChannel(),
+                                TableVersionCache.toMessage(tables.get(i), (Long) incrementedVersions.get(i)));
+                    }
+                }
+                for (String dependencyKey : drainKeys) {
+                    for (int j = 0; j < cacheLevels.length; j++) {
+                        stringConnection.zCount(dependencyKey, minScore(cacheLevels, j), maxScore(cacheLevels, j));
+                    }
+                }
+                return null;
+            });
+            metrics.recordRedisCall("level-count");
+
+            if (broadcast && !changedTables.isEmpty()) {
+                // 其它节点在收到广播之前，仍可能使用旧的本地版本号写入依赖关系，稍后再收尾一次
+                scheduledExecutorService.schedule(() -> sweepStaleRegistrations(changedTables, previousVersions),
+                        properties.getVersionCache().getMaxAge().toMillis(), TimeUnit.MILLISECONDS);
+            }
+
+            // 创建两个任务列表：一个是立即执行的（秒级新鲜度），另一个是延迟执行的（其他级别）
+            int resultOffset = broadcast ? tables.size() : 0;
+            List<CacheCleanupTask> immediateTasks = new ArrayList<>();
+            PriorityQueue<CacheCleanupTask> delayedTasks = new PriorityQueue<>();
+            for (int i = 0; i < drainKeys.size(); i++) {
+                // 如果没有依赖关系，则跳过，避免占用优先级队列
+                List<Integer> levelIndexes = new ArrayList<>(cacheLevels.length);
+                for (int j = 0; j < cacheLevels.length; j++) {
+                    if ((Long) levelCounts.get(resultOffset + j) > 0) {
+                        levelIndexes.add(j);
                     }
-                    CacheCleanupTask task = new CacheCleanupTask(table, previousVersion, sortedMembers, cacheLevel.getLevel());
-                    // 秒级新鲜度（级别为1）立即执行，其他级别延迟执行
-                    if (cacheLevel.getLevel() == CacheLevelEnum.SECONDS.getLevel()) {
+                }
+                // 同一个依赖关系键的所有级别都清理完后，再释放这个旧版本的 ZSET（或快照）
+                AtomicInteger remainingLevels = new AtomicInteger(levelIndexes.size());
+                // 为每个新鲜度级别创建任务，每个依赖关系键的任务单独调度
+                for (int j : levelIndexes) {
+                    long memberCount = (Long) levelCounts.get(resultOffset + j);
+                    CacheCleanupTask task = new CacheCleanupTask(drainTables.get(i), drainKeys.get(i),
+                            cacheLevels[j].getLevel(), minScore(cacheLevels, j), maxScore(cacheLevels, j), memberCount, remainingLevels);
+                    // 截止时间为 0 的级别（默认只有秒级新鲜度）立即执行，其他级别在截止时间内分布执行
+                    if (properties.getSchedule().getDeadline(CacheLevelEnum.fromLevel(task.cacheLevel())).isZero()) {
                         immediateTasks.add(task);
                     } else {
                         delayedTasks.add(task);
                     }
                 }
-                // 处理完后，删除上一个版本的依赖关系
-                stringRedisTemplate.delete(cacheDependencyService.getDependencyKey(table, String.valueOf(previousVersion)));
+                resultOffset += cacheLevels.length;
             }
 
-            // 立即执行秒级新鲜度的清理任务
+            // 立即执行截止时间为 0 的清理任务
             executeImmediateTasks(immediateTasks);
 
             // 提交其他级别的任务到调度器，按优先级顺序执行
             scheduleDelayedTasks(delayedTasks);
         } catch (Exception e) {
             // 报错不抛出，不阻断正常业务执行
-            log.warn("清空缓存依赖关系失败：{}，所涉及的表为：{}", e.getMessage(), tableSet, e);
+            log.warn("清空缓存依赖关系失败：{}，所涉及的表为：{}", e.getMessage(), changes, e);
         }
     }
 
     /**
-     * 立即执行秒级新鲜度的清理任务
+     * 收尾旧版本的依赖关系：删除其它节点使用过期的本地版本号写入的依赖关系及其缓存
+     *
+     * @param tables   表名
+     * @param versions 对应的旧版本号
+     */
+    private void sweepStaleRegistrations(List<String> tables, List<Long> versions) {
+        for (int i = 0; i < tables.size(); i++) {
+            for (String dependencyKey : cacheDependencyService.getDependencyKeys(tables.get(i), String.valueOf(versions.get(i)))) {
+                try {
+                    dependencyKeyDrainer.drain(tables.get(i), CacheDependencyMetrics.LEVEL_ALL, dependencyKey,
+                            Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, () -> releaseDependencyKey(dependencyKey));
+                } catch (Exception e) {
+                    log.warn("收尾旧版本的缓存依赖关系失败：dependencyKey={}", dependencyKey, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 新鲜度级别对应的最小分数，最高的新鲜度级别同时负责所有更小的分数
+     */
+    private static double minScore(CacheLevelEnum[] cacheLevels, int index) {
+        return index == 0 ? Double.NEGATIVE_INFINITY : cacheLevels[index].getLevel();
+    }
+
+    /**
+     * 新鲜度级别对应的最大分数，最低的新鲜度级别同时负责所有更大的分数
+     */
+    private static double maxScore(CacheLevelEnum[] cacheLevels, int index) {
+        return index == cacheLevels.length - 1 ? Double.POSITIVE_INFINITY : cacheLevels[index].getLevel();
+    }
+
+    /**
+     * 立即执行截止时间为 0 的清理任务。依赖关系分片时，除最后一个任务外都提交到线程池，各分片并行清理，
+     * 返回之前等待所有任务完成，写操作返回时这些业务缓存已经被删除
      *
      * @param immediateTasks 立即执行的任务列表
      */
     private void executeImmediateTasks(List<CacheCleanupTask> immediateTasks) {
-        for (CacheCleanupTask task : immediateTasks) {
+        boolean parallel = properties.getDependencyShards() > 1 && immediateTasks.size() > 1;
+        List<CompletableFuture<Void>> parallelTasks = parallel ? new ArrayList<>(immediateTasks.size() - 1) : List.of();
+        for (int i = 0; i < immediateTasks.size(); i++) {
+            CacheCleanupTask task = immediateTasks.get(i);
             try {
-                doCleanCacheDependencyByFreshness(task.sortedMembers, task.cacheLevel);
+                if (parallel && i < immediateTasks.size() - 1) {
+                    parallelTasks.add(CompletableFuture.runAsync(() -> doCleanCacheDependencyByFreshness(task), immediateCleanupExecutor));
+                } else {
+                    doCleanCacheDependencyByFreshness(task);
+                }
             } catch (Exception e) {
-                log.error("立即清理缓存依赖关系失败: table={}, version={}, level={}",
-                        task.table, task.previousVersion, task.cacheLevel, e);
+                log.error("立即清理缓存依赖关系失败: table={}, dependencyKey={}, level={}",
+                        task.table, task.dependencyKey, task.cacheLevel, e);
+            }
+        }
+        if (!parallelTasks.isEmpty()) {
+            try {
+                CompletableFuture.allOf(parallelTasks.toArray(CompletableFuture[]::new)).join();
+            } catch (Exception e) {
+                log.error("等待并行清理缓存依赖关系失败", e);
             }
         }
     }
 
     /**
-     * 调度延迟执行的缓存清理任务
+     * 调度延迟执行的缓存清理任务，每个任务的分页在其新鲜度级别的截止时间内均匀分布
      *
      * @param delayedTasks 延迟执行的任务队列
      */
     private void scheduleDelayedTasks(PriorityQueue<CacheCleanupTask> delayedTasks) {
-        // 初始延迟为0
-        long delay = 0;
-        AtomicInteger submittedTasks = new AtomicInteger(0);
-
         while (!delayedTasks.isEmpty()) {
             CacheCleanupTask task = delayedTasks.poll();
-            ScheduledFuture<?> future = scheduledExecutorService.schedule(() -> {
-                try {
-                    doCleanCacheDependencyByFreshness(task.sortedMembers, task.cacheLevel);
-                } catch (Exception e) {
-                    log.error("延迟清理缓存依赖关系失败: table={}, version={}, level={}",
-                            task.table, task.previousVersion, task.cacheLevel, e);
-                }
-            }, delay, TimeUnit.MILLISECONDS);
-
-            pendingCleanupTasks.put(task.table + ":" + task.cacheLevel, future);
-            submittedTasks.incrementAndGet();
-
-            // 增加下一次任务的延迟时间，每个任务间隔1000毫秒
-            delay += 1000;
+            try {
+                freshnessCleanupScheduler.schedule(task.table, task.dependencyKey, task.cacheLevel, task.minScore, task.maxScore,
+                        task.memberCount, () -> releaseDependencyKey(task));
+            } catch (Exception e) {
+                log.error("调度延迟清理缓存依赖关系失败: table={}, dependencyKey={}, level={}",
+                        task.table, task.dependencyKey, task.cacheLevel, e);
+            }
         }
     }
 
-    private void doCleanCacheDependencyByFreshness(Set<String> sortedMembers, Integer cacheLevel) {
+    /**
+     * 分页清理一个新鲜度级别的业务缓存，该依赖关系键的所有级别都清理完后，惰性释放旧版本的 ZSET
+     *
+     * @param task 缓存清理任务
+     */
+    private void doCleanCacheDependencyByFreshness(CacheCleanupTask task) {
         try {
-            if (!sortedMembers.isEmpty()) {
-                // 批量删除缓存
-                stringRedisTemplate.delete(sortedMembers);
-            }
+            dependencyKeyDrainer.drain(task.table, CacheLevelEnum.fromLevel(task.cacheLevel).name(), task.dependencyKey,
+                    task.minScore, task.maxScore, () -> releaseDependencyKey(task));
         } catch (Exception e) {
-            log.error("删除缓存依赖关系时发生错误: sortedMembers={}, level={}", sortedMembers, cacheLevel, e);
+            log.error("删除缓存依赖关系时发生错误: dependencyKey={}, level={}", task.dependencyKey, task.cacheLevel, e);
+        }
+    }
+
+    /**
+     * 一个级别清理完成，该依赖关系键的所有级别都清理完后，惰性释放旧版本的 ZSET
+     *
+     * @param task 缓存清理任务
+     */
+    private void releaseDependencyKey(CacheCleanupTask task) {
+        if (task.remainingLevels.decrementAndGet() == 0) {
+            releaseDependencyKey(task.dependencyKey);
         }
     }
 
+    private void releaseDependencyKey(String dependencyKey) {
+        stringRedisTemplate.unlink(dependencyKey);
+        metrics.recordRedisCall("release");
+    }
+
+    @Override
+    public void destroy() {
+        if (writeCoalescer != null) {
+            // 先清理仍在合并窗口中的表，清理可能提交到异步队列
+            writeCoalescer.close();
+        }
+        if (asyncDispatcher != null) {
+            // 先处理完队列中剩余的表，再关闭调度线程池
+            asyncDispatcher.close();
+        }
+        if (expiredDependencySweeper != null) {
+            expiredDependencySweeper.close();
+        }
+        scheduledExecutorService.shutdown();
+        immediateCleanupExecutor.shutdown();
+    }
+
     @Override
     public Object plugin(Object target) {
         return Interceptor.super.plugin(target);
@@ -202,12 +700,21 @@ public class TableAnalysisInterceptor implements Interceptor {
 
     /**
      * 缓存清理任务类，实现了Comparable接口以支持优先级排序
+     *
+     * @param dependencyKey   旧版本的依赖关系键，或者行级、列级依赖关系的快照键
+     * @param minScore        该级别负责的最小分数
+     * @param maxScore        该级别负责的最大分数
+     * @param memberCount     创建任务时该级别的依赖关系数量
+     * @param remainingLevels 同一个依赖关系键尚未清理完的级别数量
      */
     private record CacheCleanupTask(
             String table,
-            long previousVersion,
-            Set<String> sortedMembers,
-            Integer cacheLevel) implements Comparable<CacheCleanupTask> {
+            String dependencyKey,
+            Integer cacheLevel,
+            double minScore,
+            double maxScore,
+            long memberCount,
+            AtomicInteger remainingLevels) implements Comparable<CacheCleanupTask> {
 
         @Override
         public int compareTo(CacheCleanupTask other) {
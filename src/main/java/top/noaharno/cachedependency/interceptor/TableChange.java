@@ -0,0 +1,77 @@
+package top.noaharno.cachedependency.interceptor;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一张表上需要清理的缓存范围：变化的行和变化的列，两者相互独立
+ *
+ * @param table   表名
+ * @param rowKeys 发生变化的行的主键，为 null 时表示所有行
+ * @param columns 发生变化的列，为 null 时表示所有列
+ */
+record TableChange(String table, Set<String> rowKeys, Set<String> columns) {
+
+    static TableChange wholeTable(String table) {
+        return new TableChange(table, null, null);
+    }
+
+    /**
+     * @param table   表名
+     * @param rowKeys 发生变化的行的主键，为 null 时表示所有行
+     * @param columns 发生变化的列，为 null 时表示所有列
+     */
+    static TableChange of(String table, Set<String> rowKeys, Set<String> columns) {
+        return new TableChange(table, rowKeys == null ? null : Set.copyOf(rowKeys), columns == null ? null : Set.copyOf(columns));
+    }
+
+    /**
+     * 是否影响所有行
+     */
+    boolean isAllRows() {
+        return rowKeys == null;
+    }
+
+    /**
+     * 是否影响所有列
+     */
+    boolean isAllColumns() {
+        return columns == null;
+    }
+
+    /**
+     * 合并同一张表上的两次变化，行和列分别取并集，任意一次影响所有行（列）时结果影响所有行（列）
+     *
+     * @param other 同一张表上的另一次变化
+     * @return 合并后的变化
+     */
+    TableChange merge(TableChange other) {
+        return new TableChange(table, union(rowKeys, other.rowKeys), union(columns, other.columns));
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        if (first == null || second == null) {
+            return null;
+        }
+        if (first.containsAll(second)) {
+            return first;
+        }
+        Set<String> merged = new LinkedHashSet<>(first);
+        merged.addAll(second);
+        return merged;
+    }
+
+    /**
+     * 将变化按表合并到目标集合中
+     *
+     * @param target  表名 -> 变化
+     * @param changes 需要合并的变化
+     */
+    static void mergeInto(Map<String, TableChange> target, Collection<TableChange> changes) {
+        for (TableChange change : changes) {
+            target.merge(change.table(), change, TableChange::merge);
+        }
+    }
+}
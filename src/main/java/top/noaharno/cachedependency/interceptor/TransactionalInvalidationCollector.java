@@ -0,0 +1,83 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 事务感知的缓存失效收集器
+ * <p/>
+ * 在 Spring 事务中，收集事务内所有写操作涉及的表和行，并在事务提交后只做一次合并后的缓存清理；
+ * 事务回滚时不会清理任何缓存
+ */
+class TransactionalInvalidationCollector {
+
+    /**
+     * 提交后真正执行缓存清理的回调
+     */
+    private final Consumer<Collection<TableChange>> invalidator;
+
+    TransactionalInvalidationCollector(Consumer<Collection<TableChange>> invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    /**
+     * 将表上的变化合并到当前事务的待清理集合
+     *
+     * @param changes 写操作涉及的表上的变化
+     * @return 当前存在活跃事务并已收集时返回 true，否则返回 false，由调用方立即清理
+     */
+    @SuppressWarnings("unchecked")
+    boolean collect(Collection<TableChange> changes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return false;
+        }
+        Map<String, TableChange> pendingChanges = (Map<String, TableChange>) TransactionSynchronizationManager.getResource(this);
+        if (pendingChanges == null) {
+            pendingChanges = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, pendingChanges);
+            TransactionSynchronizationManager.registerSynchronization(new InvalidationSynchronization(pendingChanges));
+        }
+        TableChange.mergeInto(pendingChanges, changes);
+        return true;
+    }
+
+    /**
+     * 绑定在单个事务上的同步回调，事务挂起时解绑待清理集合，恢复时重新绑定
+     */
+    private class InvalidationSynchronization implements TransactionSynchronization {
+
+        private final Map<String, TableChange> pendingChanges;
+
+        private InvalidationSynchronization(Map<String, TableChange> pendingChanges) {
+            this.pendingChanges = pendingChanges;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TransactionalInvalidationCollector.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(TransactionalInvalidationCollector.this, pendingChanges);
+        }
+
+        @Override
+        public void afterCommit() {
+            if (!pendingChanges.isEmpty()) {
+                invalidator.accept(pendingChanges.values());
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TransactionalInvalidationCollector.this);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package top.noaharno.cachedependency.interceptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 按表合并写操作的缓存清理
+ * <p/>
+ * 表的第一次写操作会打开一个合并窗口，窗口内该表的所有写操作合并后只会在窗口结束时触发一次版本号自增和清理。
+ * 窗口在清理开始前关闭，因此窗口结束后的写操作会打开新的窗口，任何一次写操作都能在一个窗口时长内被清理。
+ * 窗口使用独立的定时线程，不会排在延迟清理的分页和过期依赖关系清理之后；清理交给虚拟线程执行，一张表的清理不会推迟其它表的窗口
+ */
+class WriteCoalescer implements AutoCloseable {
+
+    /**
+     * 当前处于合并窗口中的表 -> 窗口内合并后的变化
+     */
+    private final Map<String, TableChange> openWindows = new ConcurrentHashMap<>();
+
+    private final Function<String, Duration> windowResolver;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("cache-dependency-coalescer").daemon().factory());
+
+    private final ExecutorService flushExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Consumer<Collection<TableChange>> invalidator;
+
+    /**
+     * @param windowResolver 表名 -> 合并窗口时长，时长为 0 表示不合并
+     * @param invalidator    窗口结束时执行清理的回调
+     */
+    WriteCoalescer(Function<String, Duration> windowResolver, Consumer<Collection<TableChange>> invalidator) {
+        this.windowResolver = windowResolver;
+        this.invalidator = invalidator;
+    }
+
+    /**
+     * 提交写操作涉及的表上的变化
+     *
+     * @param changes 写操作涉及的表上的变化
+     * @return 没有配置合并窗口、需要立即清理的变化
+     */
+    Collection<TableChange> offer(Collection<TableChange> changes) {
+        List<TableChange> uncoalescedChanges = null;
+        for (TableChange change : changes) {
+            String table = change.table();
+            Duration window = windowResolver.apply(table);
+            if (window == null || window.isZero() || window.isNegative()) {
+                if (uncoalescedChanges == null) {
+                    uncoalescedChanges = new ArrayList<>();
+                }
+                uncoalescedChanges.add(change);
+                continue;
+            }
+            boolean[] opened = new boolean[1];
+            openWindows.compute(table, (key, pending) -> {
+                opened[0] = pending == null;
+                return pending == null ? change : pending.merge(change);
+            });
+            if (opened[0]) {
+                // 打开新的合并窗口，窗口内的其它写操作只合并，不再重复调度
+                try {
+                    scheduler.schedule(() -> flush(table), window.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 已经关闭，不再合并，取回窗口内的变化立即清理
+                    TableChange pending = openWindows.remove(table);
+                    if (pending != null) {
+                        if (uncoalescedChanges == null) {
+                            uncoalescedChanges = new ArrayList<>();
+                        }
+                        uncoalescedChanges.add(pending);
+                    }
+                }
+            }
+        }
+        return uncoalescedChanges == null ? List.of() : uncoalescedChanges;
+    }
+
+    /**
+     * 当前处于合并窗口中的表数量
+     *
+     * @return 表数量
+     */
+    int getOpenWindowCount() {
+        return openWindows.size();
+    }
+
+    /**
+     * 停止定时线程，立即清理所有仍然打开的窗口，并等待清理完成
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        for (String table : openWindows.keySet()) {
+            flush(table);
+        }
+        flushExecutor.close();
+    }
+
+    private void flush(String table) {
+        // 先关闭窗口再清理，清理开始后的写操作会打开新的窗口
+        TableChange change = openWindows.remove(table);
+        if (change != null) {
+            flushExecutor.execute(() -> invalidator.accept(List.of(change)));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package top.noaharno.cachedependency.metrics;
+
+import top.noaharno.cachedependency.interceptor.TableAnalysisInterceptor;
+
+/**
+ * 缓存依赖组件的指标
+ * <p/>
+ * 组件内部只依赖该接口，默认不记录任何指标；存在 Micrometer 的 MeterRegistry 时由
+ * {@link MicrometerCacheDependencyMetrics} 实现，避免在没有 Micrometer 的应用中加载它的类
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public interface CacheDependencyMetrics {
+
+    /**
+     * 不记录任何指标
+     */
+    CacheDependencyMetrics NOOP = new CacheDependencyMetrics() {
+    };
+
+    /**
+     * 清理整个依赖关系、不区分新鲜度级别时使用的级别标签
+     */
+    String LEVEL_ALL = "ALL";
+
+    /**
+     * 记录一次拦截的额外耗时，不包括 SQL 本身的执行时间
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    default void recordIntercept(long nanos) {
+    }
+
+    /**
+     * 记录一次表的缓存清理
+     *
+     * @param table 表名
+     */
+    default void recordInvalidation(String table) {
+    }
+
+    /**
+     * 记录一次访问 Redis 的往返，流水线和脚本都只算一次
+     *
+     * @param operation 操作名称
+     */
+    default void recordRedisCall(String operation) {
+    }
+
+    /**
+     * 记录删除的业务缓存数量
+     *
+     * @param table 表名
+     * @param level 新鲜度级别（{@link top.noaharno.cachedependency.constant.CacheLevelEnum} 的名称）或者 {@link #LEVEL_ALL}
+     * @param count 删除数量
+     */
+    default void recordDeletedKeys(String table, String level, int count) {
+    }
+
+    /**
+     * 记录因业务缓存过期而从依赖关系中移除的业务缓存键数量
+     *
+     * @param table 表名
+     * @param count 移除数量
+     */
+    default void recordExpiredDependencies(String table, long count) {
+    }
+
+    /**
+     * 记录一次 {@link top.noaharno.cachedependency.annotation.CacheConsistency} 的缓存访问
+     *
+     * @param businessName 业务名称
+     * @param hit          是否命中
+     */
+    default void recordCacheAccess(String businessName, boolean hit) {
+    }
+
+    /**
+     * 注册拦截器的队列深度、SQL 解析缓存等仪表
+     *
+     * @param interceptor 拦截器
+     */
+    default void bindInterceptor(TableAnalysisInterceptor interceptor) {
+    }
+}
@@ -0,0 +1,124 @@
+package top.noaharno.cachedependency.metrics;
+
+import io.micrometer.core.instrument.*;
+import top.noaharno.cachedependency.interceptor.TableAnalysisInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Micrometer 的指标实现，所有指标以 cache.dependency 为前缀
+ * <ul>
+ *     <li>cache.dependency.intercept：拦截写操作的额外耗时</li>
+ *     <li>cache.dependency.sql.parse：SQL 解析耗时，cache.dependency.sql.parse.cache.*：解析缓存的命中、未命中、淘汰和容量</li>
+ *     <li>cache.dependency.invalidations：按表统计的缓存清理次数</li>
+ *     <li>cache.dependency.redis.calls：按操作统计的 Redis 往返次数，除以清理次数即为每次清理的 Redis 往返次数</li>
+ *     <li>cache.dependency.keys.deleted：按表和新鲜度级别统计的删除的业务缓存数量</li>
+ *     <li>cache.dependency.dependencies.expired：按表统计的因业务缓存过期而移除的依赖关系数量</li>
+ *     <li>cache.dependency.cache.requests：按业务名称统计的注解缓存命中和未命中次数</li>
+ *     <li>cache.dependency.cleanup.pending、cache.dependency.scheduler.queue、cache.dependency.async.queue：
+ *     尚未完成的延迟清理任务数量、调度线程池和异步清理队列的深度</li>
+ * </ul>
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public class MicrometerCacheDependencyMetrics implements CacheDependencyMetrics {
+
+    private static final String PREFIX = "cache.dependency.";
+
+    private final MeterRegistry registry;
+
+    private final Timer interceptTimer;
+
+    private final Map<String, Counter> invalidationCounters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> redisCallCounters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> deletedKeyCounters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> expiredDependencyCounters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> cacheHitCounters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> cacheMissCounters = new ConcurrentHashMap<>();
+
+    public MicrometerCacheDependencyMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.interceptTimer = Timer.builder(PREFIX + "intercept")
+                .description("拦截写操作的额外耗时，不包括 SQL 本身的执行时间")
+                .register(registry);
+    }
+
+    @Override
+    public void recordIntercept(long nanos) {
+        interceptTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordInvalidation(String table) {
+        invalidationCounters.computeIfAbsent(table, key -> Counter.builder(PREFIX + "invalidations")
+                .tag("table", table)
+                .register(registry)).increment();
+    }
+
+    @Override
+    public void recordRedisCall(String operation) {
+        redisCallCounters.computeIfAbsent(operation, key -> Counter.builder(PREFIX + "redis.calls")
+                .tag("operation", operation)
+                .register(registry)).increment();
+    }
+
+    @Override
+    public void recordDeletedKeys(String table, String level, int count) {
+        deletedKeyCounters.computeIfAbsent(table + '\0' + level, key -> Counter.builder(PREFIX + "keys.deleted")
+                .tag("table", table)
+                .tag("level", level)
+                .register(registry)).increment(count);
+    }
+
+    @Override
+    public void recordExpiredDependencies(String table, long count) {
+        expiredDependencyCounters.computeIfAbsent(table, key -> Counter.builder(PREFIX + "dependencies.expired")
+                .tag("table", table)
+                .register(registry)).increment(count);
+    }
+
+    @Override
+    public void recordCacheAccess(String businessName, boolean hit) {
+        Map<String, Counter> counters = hit ? cacheHitCounters : cacheMissCounters;
+        counters.computeIfAbsent(businessName, key -> Counter.builder(PREFIX + "cache.requests")
+                .tag("business", businessName)
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)).increment();
+    }
+
+    @Override
+    public void bindInterceptor(TableAnalysisInterceptor interceptor) {
+        Gauge.builder(PREFIX + "cleanup.pending", interceptor, TableAnalysisInterceptor::getPendingCleanupTaskCount)
+                .description("尚未完成的延迟清理任务数量")
+                .register(registry);
+        Gauge.builder(PREFIX + "scheduler.queue", interceptor, TableAnalysisInterceptor::getSchedulerQueueDepth)
+                .description("清理调度线程池中等待执行的任务数量")
+                .register(registry);
+        Gauge.builder(PREFIX + "async.queue", interceptor, TableAnalysisInterceptor::getAsyncQueueDepth)
+                .description("异步清理队列中等待处理的表数量")
+                .register(registry);
+        FunctionTimer.builder(PREFIX + "sql.parse", interceptor,
+                        target -> target.getParseCacheStats().misses(),
+                        target -> target.getParseCacheStats().parseNanos(), TimeUnit.NANOSECONDS)
+                .description("SQL 解析耗时")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "sql.parse.cache.gets", interceptor, target -> target.getParseCacheStats().hits())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "sql.parse.cache.gets", interceptor, target -> target.getParseCacheStats().misses())
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "sql.parse.cache.evictions", interceptor, target -> target.getParseCacheStats().evictions())
+                .register(registry);
+        Gauge.builder(PREFIX + "sql.parse.cache.size", interceptor, target -> target.getParseCacheStats().size())
+                .register(registry);
+    }
+}
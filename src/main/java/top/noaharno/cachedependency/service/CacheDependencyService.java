@@ -1,10 +1,35 @@
 package top.noaharno.cachedependency.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.RedisZSetCommands.ZAddArgs;
+import org.springframework.data.redis.connection.DefaultStringTuple;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection.StringTuple;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import top.noaharno.cachedependency.config.CacheDependencyProperties;
-import io.micrometer.common.util.StringUtils;
+import top.noaharno.cachedependency.constant.InvalidationModeEnum;
+import top.noaharno.cachedependency.store.DependencyStore;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
 /**
  * 缓存依赖服务实现类
  * <p>
@@ -16,15 +41,85 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 @Slf4j
 public class CacheDependencyService {
 
-    private static final String INIT_VERSION = "1";
+    /**
+     * 记录缓存依赖关系的脚本：在 Redis 端一次性完成所有表的版本号解析和依赖关系写入，
+     * 避免 GET 版本号和 INCR 版本号之间的竞争。Spring 会优先使用 EVALSHA 执行脚本
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RECORD_DEPENDENCIES_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/cache-dependency/record_dependencies.lua"), List.class);
+
+    /**
+     * 批量记录缓存依赖关系的脚本：每张表只解析一次版本号，通过多成员 ZADD 写入所有业务缓存键
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RECORD_DEPENDENCIES_BATCH_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/cache-dependency/record_dependencies_batch.lua"), List.class);
+
+    /**
+     * 写入业务缓存并记录缓存依赖关系的脚本：缓存值和所有表的依赖关系在 Redis 端一次性写入
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CACHE_AND_RECORD_DEPENDENCIES_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/cache-dependency/cache_and_record_dependencies.lua"), List.class);
+
+    /**
+     * 分片依赖关系键中分片序号之前的分隔符
+     */
+    private static final String SHARD_SEPARATOR = ":s";
+
+    /**
+     * 过期索引成员中版本号与业务缓存键之间的分隔符
+     */
+    public static final char EXPIRY_INDEX_SEPARATOR = ':';
 
     private final StringRedisTemplate stringRedisTemplate;
 
     private final CacheDependencyProperties properties;
 
+    /**
+     * 表版本号的本地缓存，未开启时为 null
+     */
+    private final TableVersionCache tableVersionCache;
+
+    /**
+     * 依赖关系的本地去重过滤器，未开启时为 null
+     */
+    private final DependencyRegistrationFilter registrationFilter;
+
+    /**
+     * 列序号字典
+     */
+    private final ColumnDictionary columnDictionary;
+
+    /**
+     * 表版本号和表级依赖关系的存储，使用内置的 Redis 实现时为 null
+     */
+    private final DependencyStore dependencyStore;
+
     public CacheDependencyService(StringRedisTemplate stringRedisTemplate, CacheDependencyProperties properties) {
+        this(stringRedisTemplate, properties, null);
+    }
+
+    public CacheDependencyService(StringRedisTemplate stringRedisTemplate, CacheDependencyProperties properties,
+                                  TableVersionCache tableVersionCache) {
+        this(stringRedisTemplate, properties, tableVersionCache, null);
+    }
+
+    public CacheDependencyService(StringRedisTemplate stringRedisTemplate, CacheDependencyProperties properties,
+                                  TableVersionCache tableVersionCache, DependencyStore dependencyStore) {
+        if (dependencyStore != null) {
+            checkStoreSupported(properties, tableVersionCache);
+        }
+        this.dependencyStore = dependencyStore;
         this.stringRedisTemplate = stringRedisTemplate;
         this.properties = properties;
+        this.tableVersionCache = tableVersionCache;
+        // 去重过滤器依赖本地版本号，只有开启版本号本地缓存时才生效
+        CacheDependencyProperties.RegistrationFilter filter = properties.getRegistrationFilter();
+        this.registrationFilter = filter.isEnabled() && tableVersionCache != null
+                ? new DependencyRegistrationFilter(filter.getMaxEntriesPerTable()) : null;
+        this.columnDictionary = new ColumnDictionary(properties.getTrackedColumns());
     }
 
     /**
@@ -35,25 +130,588 @@ public class CacheDependencyService {
      * @param tables    当前业务依赖的表名
      */
     public void recordDependencies(String businessKey, int freshness, String... tables) {
+        recordDependencies(businessKey, null, freshness, tables);
+    }
+
+    /**
+     * 添加缓存依赖关系，开启过期依赖关系清理时，业务缓存过期后依赖关系会在后台被移除，不需要等到表更新
+     *
+     * @param businessKey 业务缓存键
+     * @param ttl         业务缓存的过期时间，为 null 或者不大于 0 时表示不过期
+     * @param freshness   当前业务的新鲜度权重
+     * @param tables      当前业务依赖的表名
+     */
+    public void recordDependencies(String businessKey, Duration ttl, int freshness, String... tables) {
+        if (tables.length == 0) {
+            return;
+        }
+        checkConfiguredTables(tables);
+        if (dependencyStore != null) {
+            dependencyStore.recordDependencies(List.of(new DependencyRegistration(businessKey, freshness, List.of(tables), ttl)));
+            return;
+        }
+        long expireAt = getExpireAt(ttl);
+        String[] localVersions = getLocalVersions(tables);
+        if (localVersions != null) {
+            // 本地已经有所有表的版本号，直接写入依赖关系，不再读取版本号；当前版本已经写入过的表直接跳过
+            List<Integer> pendingIndexes = getPendingIndexes(businessKey, freshness, expireAt, tables, localVersions);
+            if (pendingIndexes.isEmpty()) {
+                return;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                addDependencies((StringRedisConnection) connection, businessKey, freshness, expireAt, tables, localVersions, pendingIndexes);
+                return null;
+            });
+            addToRegistrationFilter(businessKey, freshness, expireAt, tables, localVersions, pendingIndexes);
+            return;
+        }
+
+        List<String> versionKeys = new ArrayList<>(tables.length);
+        List<String> args = new ArrayList<>(tables.length + 4);
+        args.add(businessKey);
+        args.add(String.valueOf(freshness));
+        args.add(getShardSuffix(businessKey));
+        args.add(getExpireAtArg(expireAt));
+        for (String tableName : tables) {
+            versionKeys.add(getVersionKey(tableName));
+            args.add(getDependencyKeyPrefix(tableName));
+        }
+        List<String> expiryIndexKeys = getExpiryIndexKeys(tables);
+        // 一次往返完成所有表的版本号解析和依赖关系记录
+        List<?> versions;
+        if (properties.getCluster().isEnabled() && tables.length > 1) {
+            versions = executeRecordScriptPerTable(versionKeys, expiryIndexKeys, args, null);
+        } else {
+            List<String> keys = new ArrayList<>(versionKeys);
+            keys.addAll(expiryIndexKeys);
+            versions = stringRedisTemplate.execute(RECORD_DEPENDENCIES_SCRIPT, keys, args.toArray());
+        }
+        onVersionsResolved(businessKey, freshness, expireAt, tables, versions);
+    }
+
+    /**
+     * 批量添加缓存依赖关系，用于列表、分页缓存的填充以及缓存预热
+     * <p>
+     * 按表合并所有业务缓存键，每张表只解析一次版本号，同一个依赖关系 key 的业务缓存键通过多成员 ZADD 一次写入，
+     * 所有表在一次往返中完成。同一个业务缓存键在同一张表上出现多次时，以最后一次的新鲜度和过期时间为准
+     *
+     * @param registrations 每个业务缓存键的依赖关系
+     */
+    public void recordDependencies(Collection<DependencyRegistration> registrations) {
+        Map<String, Map<String, Integer>> membersByTable = new LinkedHashMap<>();
+        Map<String, Long> expireAtByKey = new HashMap<>();
+        for (DependencyRegistration registration : registrations) {
+            checkConfiguredTables(registration.tables().toArray(new String[0]));
+            for (String tableName : registration.tables()) {
+                membersByTable.computeIfAbsent(tableName, key -> new LinkedHashMap<>())
+                        .put(registration.businessKey(), registration.freshness());
+            }
+            expireAtByKey.put(registration.businessKey(), getExpireAt(registration.ttl()));
+        }
+        if (membersByTable.isEmpty()) {
+            return;
+        }
+        if (dependencyStore != null) {
+            dependencyStore.recordDependencies(registrations);
+            return;
+        }
+        String[] tables = membersByTable.keySet().toArray(new String[0]);
+        String[] localVersions = getLocalVersions(tables);
+        if (localVersions != null) {
+            // 本地已经有所有表的版本号，每个依赖关系 key 一条多成员 ZADD，通过同一个流水线写入
+            List<Map<String, Set<StringTuple>>> pendingMembers = new ArrayList<>(tables.length);
+            for (int i = 0; i < tables.length; i++) {
+                Map<String, Set<StringTuple>> tuplesByKey = new LinkedHashMap<>();
+                for (Map.Entry<String, Integer> member : membersByTable.get(tables[i]).entrySet()) {
+                    if (registrationFilter == null || !registrationFilter.contains(tables[i], localVersions[i], member.getKey(),
+                            member.getValue(), expireAtByKey.get(member.getKey()))) {
+                        tuplesByKey.computeIfAbsent(getDependencyKey(tables[i], localVersions[i], member.getKey()),
+                                key -> new LinkedHashSet<>()).add(new DefaultStringTuple(member.getKey(), member.getValue()));
+                    }
+                }
+                pendingMembers.add(tuplesByKey);
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (int i = 0; i < tables.length; i++) {
+                    pendingMembers.get(i).forEach(stringConnection::zAdd);
+                    for (Set<StringTuple> tuples : pendingMembers.get(i).values()) {
+                        for (StringTuple tuple : tuples) {
+                            String businessKey = tuple.getValueAsString();
+                            addExpiryIndex(stringConnection, tables[i], localVersions[i], businessKey, expireAtByKey.get(businessKey));
+                        }
+                    }
+                }
+                return null;
+            });
+            if (registrationFilter != null) {
+                for (int i = 0; i < tables.length; i++) {
+                    for (Set<StringTuple> tuples : pendingMembers.get(i).values()) {
+                        for (StringTuple tuple : tuples) {
+                            String businessKey = tuple.getValueAsString();
+                            registrationFilter.add(tables[i], localVersions[i], businessKey, tuple.getScore().intValue(),
+                                    expireAtByKey.get(businessKey));
+                        }
+                    }
+                }
+            }
+            return;
+        }
+
+        boolean withExpiry = properties.getExpirySweep().isEnabled();
+        List<String> versionKeys = new ArrayList<>(tables.length);
+        List<List<String>> argsByTable = new ArrayList<>(tables.length);
+        for (String tableName : tables) {
+            // 按分片分组，每个分片一条多成员 ZADD
+            Map<String, List<String>> membersByShard = new LinkedHashMap<>();
+            membersByTable.get(tableName).forEach((businessKey, freshness) -> {
+                List<String> shardMembers = membersByShard.computeIfAbsent(getShardSuffix(businessKey), key -> new ArrayList<>());
+                shardMembers.add(String.valueOf(freshness));
+                shardMembers.add(businessKey);
+            });
+            List<String> tableArgs = new ArrayList<>(membersByTable.get(tableName).size() * 2 + membersByShard.size() * 2 + 2);
+            tableArgs.add(getDependencyKeyPrefix(tableName));
+            tableArgs.add(String.valueOf(membersByShard.size()));
+            membersByShard.forEach((shardSuffix, shardMembers) -> {
+                tableArgs.add(shardSuffix);
+                tableArgs.add(String.valueOf(shardMembers.size() / 2));
+                tableArgs.addAll(shardMembers);
+            });
+            if (withExpiry) {
+                tableArgs.add(String.valueOf(membersByTable.get(tableName).size()));
+                for (String businessKey : membersByTable.get(tableName).keySet()) {
+                    tableArgs.add(String.valueOf(expireAtByKey.get(businessKey)));
+                    tableArgs.add(businessKey);
+                }
+            }
+            versionKeys.add(getVersionKey(tableName));
+            argsByTable.add(tableArgs);
+        }
+        List<?> versions;
+        if (properties.getCluster().isEnabled() && tables.length > 1) {
+            // 不同表位于不同的槽位，每张表单独执行一次脚本，所有脚本通过同一个流水线发送
+            List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                    for (int i = 0; i < tables.length; i++) {
+                        List<String> args = new ArrayList<>(argsByTable.get(i).size() + 1);
+                        args.add(withExpiry ? "1" : "0");
+                        args.addAll(argsByTable.get(i));
+                        stringOperations.execute(RECORD_DEPENDENCIES_BATCH_SCRIPT, withExpiry
+                                ? List.of(versionKeys.get(i), getExpiryIndexKey(tables[i])) : List.of(versionKeys.get(i)), args.toArray());
+                    }
+                    return null;
+                }
+            });
+            List<Object> resolved = new ArrayList<>(results.size());
+            for (Object result : results) {
+                resolved.add(((List<?>) result).get(0));
+            }
+            versions = resolved;
+        } else {
+            List<String> keys = new ArrayList<>(versionKeys);
+            keys.addAll(getExpiryIndexKeys(tables));
+            List<String> args = new ArrayList<>();
+            args.add(withExpiry ? "1" : "0");
+            argsByTable.forEach(args::addAll);
+            versions = stringRedisTemplate.execute(RECORD_DEPENDENCIES_BATCH_SCRIPT, keys, args.toArray());
+        }
+        if (tableVersionCache != null && versions != null) {
+            for (int i = 0; i < tables.length && i < versions.size(); i++) {
+                String version = String.valueOf(versions.get(i));
+                tableVersionCache.observe(tables[i], Long.parseLong(version));
+                if (registrationFilter != null) {
+                    String tableName = tables[i];
+                    membersByTable.get(tableName).forEach((businessKey, freshness) ->
+                            registrationFilter.add(tableName, version, businessKey, freshness, expireAtByKey.get(businessKey)));
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入业务缓存并添加缓存依赖关系，缓存值和所有表的依赖关系在一次往返中写入
+     *
+     * @param businessKey 业务缓存键
+     * @param value       序列化后的业务缓存值
+     * @param ttl         业务缓存的过期时间，为 null 或者不大于 0 时不过期
+     * @param freshness   当前业务的新鲜度权重
+     * @param tables      当前业务依赖的表名
+     */
+    public void cacheAndRecordDependencies(String businessKey, byte[] value, Duration ttl, int freshness, String... tables) {
+        cacheAndRecordDependencies(businessKey, value, ttl, null, freshness, tables);
+    }
+
+    /**
+     * 写入业务缓存并添加缓存依赖关系，同时写入一份不受表更新影响的旧值副本，缓存被清理后可以先返回旧值
+     *
+     * @param businessKey 业务缓存键
+     * @param value       序列化后的业务缓存值
+     * @param ttl         业务缓存的过期时间，为 null 或者不大于 0 时不过期
+     * @param staleTtl    旧值副本的过期时间，为 null 或者不大于 0 时不写入副本
+     * @param freshness   当前业务的新鲜度权重
+     * @param tables      当前业务依赖的表名
+     */
+    public void cacheAndRecordDependencies(String businessKey, byte[] value, Duration ttl, Duration staleTtl,
+                                           int freshness, String... tables) {
+        checkConfiguredTables(tables);
+        byte[] rawKey = businessKey.getBytes(StandardCharsets.UTF_8);
+        String staleKey = getStaleKey(businessKey);
+        long ttlMillis = ttl == null || ttl.isNegative() ? 0 : ttl.toMillis();
+        long staleTtlMillis = staleTtl == null || staleTtl.isNegative() ? 0 : staleTtl.toMillis();
+        Expiration expiration = ttlMillis > 0 ? Expiration.milliseconds(ttlMillis) : Expiration.persistent();
+        RedisCallback<Object> cacheWrite = connection -> {
+            connection.stringCommands().set(rawKey, value, expiration, SetOption.upsert());
+            if (staleTtlMillis > 0) {
+                connection.stringCommands().set(staleKey.getBytes(StandardCharsets.UTF_8), value,
+                        Expiration.milliseconds(staleTtlMillis), SetOption.upsert());
+            }
+            return null;
+        };
+        if (dependencyStore != null) {
+            // 依赖关系不在 Redis 中，先写入缓存值再记录依赖关系
+            stringRedisTemplate.executePipelined(cacheWrite);
+            dependencyStore.recordDependencies(List.of(new DependencyRegistration(businessKey, freshness, List.of(tables), ttl)));
+            return;
+        }
+
+        long expireAt = getExpireAt(ttl);
+        String[] localVersions = tables.length == 0 ? new String[0] : getLocalVersions(tables);
+        if (localVersions != null) {
+            // 本地已经有所有表的版本号，缓存值和依赖关系通过同一个流水线写入
+            List<Integer> pendingIndexes = getPendingIndexes(businessKey, freshness, expireAt, tables, localVersions);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                cacheWrite.doInRedis(connection);
+                addDependencies((StringRedisConnection) connection, businessKey, freshness, expireAt, tables, localVersions, pendingIndexes);
+                return null;
+            });
+            addToRegistrationFilter(businessKey, freshness, expireAt, tables, localVersions, pendingIndexes);
+            return;
+        }
+
+        List<?> versions;
+        List<String> expiryIndexKeys = getExpiryIndexKeys(tables);
+        if (properties.getCluster().isEnabled()) {
+            // 业务缓存和表的版本号位于不同的槽位，缓存值和每张表的脚本通过同一个流水线发送
+            List<String> versionKeys = new ArrayList<>(tables.length);
+            List<String> args = new ArrayList<>(tables.length + 4);
+            args.add(businessKey);
+            args.add(String.valueOf(freshness));
+            args.add(getShardSuffix(businessKey));
+            args.add(getExpireAtArg(expireAt));
+            for (String tableName : tables) {
+                versionKeys.add(getVersionKey(tableName));
+                args.add(getDependencyKeyPrefix(tableName));
+            }
+            versions = executeRecordScriptPerTable(versionKeys, expiryIndexKeys, args, cacheWrite);
+        } else {
+            List<String> keys = new ArrayList<>(tables.length * 2 + 2);
+            List<byte[]> args = new ArrayList<>(tables.length + 6);
+            keys.add(businessKey);
+            keys.add(staleKey);
+            args.add(value);
+            args.add(String.valueOf(ttlMillis).getBytes(StandardCharsets.UTF_8));
+            args.add(String.valueOf(staleTtlMillis).getBytes(StandardCharsets.UTF_8));
+            args.add(String.valueOf(freshness).getBytes(StandardCharsets.UTF_8));
+            args.add(getShardSuffix(businessKey).getBytes(StandardCharsets.UTF_8));
+            args.add(getExpireAtArg(expireAt).getBytes(StandardCharsets.UTF_8));
+            for (String tableName : tables) {
+                keys.add(getVersionKey(tableName));
+                args.add(getDependencyKeyPrefix(tableName).getBytes(StandardCharsets.UTF_8));
+            }
+            keys.addAll(expiryIndexKeys);
+            versions = executeCacheScript(keys, args);
+        }
+        onVersionsResolved(businessKey, freshness, expireAt, tables, versions);
+    }
+
+    /**
+     * 添加行级缓存依赖关系，只有这些行被修改（或者无法确定修改了哪些行）时才清理该业务缓存
+     *
+     * @param businessKey 业务缓存键
+     * @param freshness   当前业务的新鲜度权重
+     * @param tableName   当前业务依赖的表名，需要配置主键列
+     * @param rowKeys     当前业务依赖的行的主键
+     */
+    public void recordRowDependencies(String businessKey, int freshness, String tableName, Object... rowKeys) {
+        if (rowKeys.length == 0) {
+            return;
+        }
+        if (!properties.getTables().contains(tableName)) {
+            throw new RuntimeException("Table " + tableName + " is not in the configured tables.");
+        }
+        if (!properties.getRowKeyColumns().containsKey(tableName)) {
+            throw new RuntimeException("Table " + tableName + " has no configured row key column.");
+        }
+        String[] rowKeyValues = new String[rowKeys.length];
+        for (int i = 0; i < rowKeys.length; i++) {
+            rowKeyValues[i] = String.valueOf(rowKeys[i]);
+        }
+        // 先写入行的依赖关系再写入行索引，清理时先移除行索引再清理行的依赖关系
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String rowKey : rowKeyValues) {
+                stringConnection.zAdd(getRowDependencyKey(tableName, rowKey), freshness, businessKey);
+            }
+            stringConnection.sAdd(getRowIndexKey(tableName), rowKeyValues);
+            return null;
+        });
+    }
+
+    /**
+     * 添加列级缓存依赖关系，只有这些列被修改时才清理该业务缓存
+     *
+     * @param businessKey 业务缓存键
+     * @param freshness   当前业务的新鲜度权重
+     * @param tableName   当前业务依赖的表名，需要配置跟踪的列
+     * @param columns     当前业务读取的列
+     */
+    public void recordColumnDependencies(String businessKey, int freshness, String tableName, String... columns) {
+        if (columns.length == 0) {
+            return;
+        }
+        if (!properties.getTables().contains(tableName)) {
+            throw new RuntimeException("Table " + tableName + " is not in the configured tables.");
+        }
+        long mask = columnDictionary.dependencyMask(tableName, columns);
+        // 依赖相同列的业务缓存位于同一个 ZSET，先写入依赖关系再写入列位图索引
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.zAdd(getColumnDependencyKey(tableName, mask), freshness, businessKey);
+            stringConnection.sAdd(getColumnIndexKey(tableName), Long.toHexString(mask));
+            return null;
+        });
+    }
+
+    /**
+     * 列序号字典
+     *
+     * @return 列序号字典
+     */
+    public ColumnDictionary getColumnDictionary() {
+        return columnDictionary;
+    }
+
+    /**
+     * 表版本号和表级依赖关系的存储
+     *
+     * @return 存储，使用内置的 Redis 实现时为 null
+     */
+    public DependencyStore getDependencyStore() {
+        return dependencyStore;
+    }
+
+    /**
+     * Redis Cluster 模式下不同表的 key 位于不同的槽位，不能在一个脚本中访问，
+     * 因此每张表单独执行一次脚本，所有脚本通过同一个流水线发送
+     *
+     * @param versionKeys     每张表的版本号 key
+     * @param expiryIndexKeys 每张表的过期索引 key，未开启过期依赖关系清理时为空
+     * @param args            脚本参数：业务缓存键、新鲜度、分片后缀、过期时间戳、每张表的依赖关系 key 前缀
+     * @param cacheWrite      在脚本之前通过同一个流水线写入业务缓存，为 null 时不写入
+     * @return 每张表记录依赖时所使用的版本号
+     */
+    private List<Object> executeRecordScriptPerTable(List<String> versionKeys, List<String> expiryIndexKeys, List<String> args,
+                                                     RedisCallback<Object> cacheWrite) {
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                if (cacheWrite != null) {
+                    stringOperations.execute(cacheWrite);
+                }
+                for (int i = 0; i < versionKeys.size(); i++) {
+                    stringOperations.execute(RECORD_DEPENDENCIES_SCRIPT, expiryIndexKeys.isEmpty()
+                                    ? List.of(versionKeys.get(i)) : List.of(versionKeys.get(i), expiryIndexKeys.get(i)),
+                            args.get(0), args.get(1), args.get(2), args.get(3), args.get(4 + i));
+                }
+                return null;
+            }
+        });
+        List<Object> versions = new ArrayList<>(results.size());
+        // 写入业务缓存的结果在前，只取最后每张表脚本的结果
+        for (Object result : results.subList(results.size() - versionKeys.size(), results.size())) {
+            versions.add(((List<?>) result).get(0));
+        }
+        return versions;
+    }
+
+    /**
+     * 执行写入业务缓存并记录依赖关系的脚本，缓存值是二进制数据，所有参数都按照字节数组传递
+     *
+     * @param keys 业务缓存键、旧值副本的 key、每张表的版本号 key、每张表的过期索引 key
+     * @param args 脚本参数：缓存值、过期时间、旧值副本的过期时间、新鲜度、分片后缀、过期时间戳、每张表的依赖关系 key 前缀
+     * @return 每张表记录依赖时所使用的版本号
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<?> executeCacheScript(List<String> keys, List<byte[]> args) {
+        return stringRedisTemplate.execute(CACHE_AND_RECORD_DEPENDENCIES_SCRIPT, RedisSerializer.byteArray(),
+                (RedisSerializer) RedisSerializer.string(), keys, args.toArray());
+    }
+
+    /**
+     * 自定义的存储只负责表版本号和表级依赖关系，依赖 Redis 数据结构的功能不能同时开启
+     */
+    private static void checkStoreSupported(CacheDependencyProperties properties, TableVersionCache tableVersionCache) {
+        if (properties.getInvalidationMode() == InvalidationModeEnum.LAZY) {
+            throw new RuntimeException("LAZY invalidation mode is not supported by a custom dependency store.");
+        }
+        if (!properties.getRowKeyColumns().isEmpty() || !properties.getTrackedColumns().isEmpty()) {
+            throw new RuntimeException("Row and column dependencies are not supported by a custom dependency store.");
+        }
+        if (properties.getCluster().isEnabled() || tableVersionCache != null) {
+            throw new RuntimeException("Cluster mode and version cache are not supported by a custom dependency store.");
+        }
+    }
+
+    /**
+     * 校验依赖的表都已经配置。LAZY 模式下表更新时不清理表级依赖关系，记录了也不会生效，直接报错
+     */
+    private void checkConfiguredTables(String... tables) {
+        if (tables.length > 0 && properties.getInvalidationMode() == InvalidationModeEnum.LAZY) {
+            throw new RuntimeException("Table-level dependencies are not cleaned in LAZY invalidation mode, use VersionStampedCache instead.");
+        }
         for (String tableName : tables) {
             if (!properties.getTables().contains(tableName)) {
                 // 如果表名不在配置的表中，需要进行报错，避免表更新时缓存被遗漏
                 throw new RuntimeException("Table " + tableName + " is not in the configured tables.");
             }
-            recordDependency(tableName, businessKey, freshness);
         }
     }
 
-    private void recordDependency(String tableName, String businessKey, int freshness) {
-        // 1. 获取当前 table 最新的版本号
-        String versionKey = getVersionKey(tableName);
-        String currentVersion = stringRedisTemplate.opsForValue().get(versionKey);
-        if (StringUtils.isBlank(currentVersion)) {
-            // 2. 如果 table 没有版本号，则设置初始版本号为 1
-            stringRedisTemplate.opsForValue().set(versionKey, INIT_VERSION);
-            currentVersion = INIT_VERSION;
+    /**
+     * 使用本地版本号时，当前版本还没有写入过依赖关系的表的下标
+     */
+    private List<Integer> getPendingIndexes(String businessKey, int freshness, long expireAt, String[] tables,
+                                            String[] localVersions) {
+        List<Integer> pendingIndexes = new ArrayList<>(tables.length);
+        for (int i = 0; i < tables.length; i++) {
+            if (registrationFilter == null
+                    || !registrationFilter.contains(tables[i], localVersions[i], businessKey, freshness, expireAt)) {
+                pendingIndexes.add(i);
+            }
+        }
+        return pendingIndexes;
+    }
+
+    private void addDependencies(StringRedisConnection connection, String businessKey, int freshness, long expireAt,
+                                 String[] tables, String[] localVersions, List<Integer> pendingIndexes) {
+        for (int i : pendingIndexes) {
+            connection.zAdd(getDependencyKey(tables[i], localVersions[i], businessKey), freshness, businessKey);
+            addExpiryIndex(connection, tables[i], localVersions[i], businessKey, expireAt);
+        }
+    }
+
+    /**
+     * 写入过期索引，与脚本中的逻辑相同：过期时间只能推后，没有过期时间时从过期索引中移除。未开启过期依赖关系清理时不写入
+     */
+    private void addExpiryIndex(StringRedisConnection connection, String tableName, String version, String businessKey,
+                                long expireAt) {
+        if (!properties.getExpirySweep().isEnabled()) {
+            return;
+        }
+        String member = getExpiryIndexMember(version, businessKey);
+        if (expireAt == 0) {
+            connection.zRem(getExpiryIndexKey(tableName), member);
+        } else {
+            connection.zAdd(getExpiryIndexKey(tableName), expireAt, member, ZAddArgs.empty().gt());
+        }
+    }
+
+    private void addToRegistrationFilter(String businessKey, int freshness, long expireAt, String[] tables,
+                                         String[] localVersions, List<Integer> pendingIndexes) {
+        if (registrationFilter != null) {
+            for (int i : pendingIndexes) {
+                registrationFilter.add(tables[i], localVersions[i], businessKey, freshness, expireAt);
+            }
+        }
+    }
+
+    /**
+     * 脚本返回记录依赖时所使用的版本号后，更新本地版本号和去重过滤器
+     */
+    private void onVersionsResolved(String businessKey, int freshness, long expireAt, String[] tables, List<?> versions) {
+        if (tableVersionCache != null && versions != null) {
+            for (int i = 0; i < tables.length && i < versions.size(); i++) {
+                String version = String.valueOf(versions.get(i));
+                tableVersionCache.observe(tables[i], Long.parseLong(version));
+                if (registrationFilter != null) {
+                    registrationFilter.add(tables[i], version, businessKey, freshness, expireAt);
+                }
+            }
         }
-        stringRedisTemplate.opsForZSet().add(getDependencyKey(tableName, currentVersion), businessKey, freshness);
+    }
+
+    /**
+     * 业务缓存的过期时间戳，写入过期索引时使用
+     *
+     * @param ttl 业务缓存的过期时间
+     * @return 过期时间戳（毫秒），未开启过期依赖关系清理或者业务缓存不过期时为 0
+     */
+    private long getExpireAt(Duration ttl) {
+        if (!properties.getExpirySweep().isEnabled() || ttl == null || ttl.isNegative() || ttl.isZero()) {
+            return 0;
+        }
+        return System.currentTimeMillis() + ttl.toMillis();
+    }
+
+    /**
+     * 脚本中过期时间戳的参数，未开启过期依赖关系清理时为空字符串，脚本不会访问过期索引
+     */
+    private String getExpireAtArg(long expireAt) {
+        return properties.getExpirySweep().isEnabled() ? String.valueOf(expireAt) : "";
+    }
+
+    /**
+     * 每张表的过期索引键，未开启过期依赖关系清理时为空
+     */
+    private List<String> getExpiryIndexKeys(String... tables) {
+        if (!properties.getExpirySweep().isEnabled()) {
+            return List.of();
+        }
+        List<String> expiryIndexKeys = new ArrayList<>(tables.length);
+        for (String tableName : tables) {
+            expiryIndexKeys.add(getExpiryIndexKey(tableName));
+        }
+        return expiryIndexKeys;
+    }
+
+    /**
+     * 表版本号发生变更时，同步更新本节点的本地版本号
+     *
+     * @param tableName 表名
+     * @param version   新的版本号
+     */
+    public void onVersionChanged(String tableName, long version) {
+        if (tableVersionCache != null) {
+            tableVersionCache.update(tableName, version);
+        }
+        if (registrationFilter != null) {
+            registrationFilter.clear(tableName);
+        }
+    }
+
+    /**
+     * 从本地缓存中获取所有表的版本号
+     *
+     * @param tables 表名
+     * @return 版本号数组，只要有一张表没有可信的本地版本号就返回 null
+     */
+    private String[] getLocalVersions(String... tables) {
+        if (tableVersionCache == null || !tableVersionCache.isAvailable()) {
+            return null;
+        }
+        String[] versions = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            versions[i] = tableVersionCache.get(tables[i]);
+            if (versions[i] == null) {
+                return null;
+            }
+        }
+        return versions;
     }
 
     /**
@@ -62,7 +720,7 @@ public class CacheDependencyService {
      * @return 表版本号键
      */
     public String getVersionKey(String tableName) {
-        return properties.getVersionKeyPrefix() + tableName;
+        return properties.getVersionKeyPrefix() + getTableKeyPart(tableName);
     }
 
     /**
@@ -72,8 +730,170 @@ public class CacheDependencyService {
      * @return 表依赖关系键
      */
     public String getDependencyKey(String tableName, String version) {
-        return properties.getDependencyKeyPrefix() + tableName + ":v" + version;
+        return getDependencyKeyPrefix(tableName) + version;
+    }
+
+    /**
+     * 获取业务缓存键所在分片的表依赖关系键
+     * @param tableName   表名
+     * @param version     版本号
+     * @param businessKey 业务缓存键
+     * @return 表依赖关系键，未分片时与 {@link #getDependencyKey(String, String)} 相同
+     */
+    public String getDependencyKey(String tableName, String version, String businessKey) {
+        return getDependencyKey(tableName, version) + getShardSuffix(businessKey);
+    }
+
+    /**
+     * 获取表在一个版本下所有需要清理的依赖关系键。分片时同时包含不带分片后缀的键，
+     * 使开启分片之前记录的依赖关系仍然能够被清理
+     * @param tableName 表名
+     * @param version   版本号
+     * @return 表依赖关系键
+     */
+    public List<String> getDependencyKeys(String tableName, String version) {
+        String dependencyKey = getDependencyKey(tableName, version);
+        int shards = properties.getDependencyShards();
+        if (shards <= 1) {
+            return List.of(dependencyKey);
+        }
+        List<String> dependencyKeys = new ArrayList<>(shards + 1);
+        dependencyKeys.add(dependencyKey);
+        for (int shard = 0; shard < shards; shard++) {
+            dependencyKeys.add(dependencyKey + SHARD_SEPARATOR + shard);
+        }
+        return dependencyKeys;
+    }
+
+    /**
+     * 业务缓存键所在分片的后缀，按照业务缓存键的哈希值分配分片，未分片时为空字符串
+     * @param businessKey 业务缓存键
+     * @return 分片后缀
+     */
+    private String getShardSuffix(String businessKey) {
+        int shards = properties.getDependencyShards();
+        return shards <= 1 ? "" : SHARD_SEPARATOR + Math.floorMod(businessKey.hashCode(), shards);
+    }
+
+    /**
+     * 获取表依赖关系键的前缀，拼接上版本号即为完整的依赖关系键
+     * @param tableName 表名
+     * @return 表依赖关系键前缀
+     */
+    public String getDependencyKeyPrefix(String tableName) {
+        return properties.getDependencyKeyPrefix() + getTableKeyPart(tableName) + ":v";
+    }
+
+    /**
+     * 获取表的过期索引键，按照业务缓存的过期时间记录表每个版本的依赖关系，与依赖关系位于同一个槽位
+     * @param tableName 表名
+     * @return 过期索引键
+     */
+    public String getExpiryIndexKey(String tableName) {
+        return properties.getDependencyKeyPrefix() + getTableKeyPart(tableName) + ":expiry";
+    }
+
+    /**
+     * 获取过期索引的成员，由版本号和业务缓存键组成，版本号中不包含分隔符
+     * @param version     版本号
+     * @param businessKey 业务缓存键
+     * @return 过期索引的成员
+     */
+    public String getExpiryIndexMember(String version, String businessKey) {
+        return version + EXPIRY_INDEX_SEPARATOR + businessKey;
+    }
+
+    /**
+     * 获取行级依赖关系键，行级依赖关系不区分版本
+     * @param tableName 表名
+     * @param rowKey 行的主键
+     * @return 行级依赖关系键
+     */
+    public String getRowDependencyKey(String tableName, String rowKey) {
+        return getRowDependencyKeyPrefix(tableName) + rowKey;
+    }
+
+    /**
+     * 获取行级依赖关系键的前缀，拼接上行的主键即为完整的行级依赖关系键
+     * @param tableName 表名
+     * @return 行级依赖关系键前缀
+     */
+    public String getRowDependencyKeyPrefix(String tableName) {
+        return properties.getDependencyKeyPrefix() + getTableKeyPart(tableName) + ":row:";
+    }
+
+    /**
+     * 获取行索引键，记录表中存在行级依赖关系的行
+     * @param tableName 表名
+     * @return 行索引键
+     */
+    public String getRowIndexKey(String tableName) {
+        return properties.getDependencyKeyPrefix() + getTableKeyPart(tableName) + ":rows";
+    }
+
+    /**
+     * 获取列级依赖关系键，依赖相同列的业务缓存共用一个键，列级依赖关系不区分版本
+     * @param tableName 表名
+     * @param mask 依赖的列位图
+     * @return 列级依赖关系键
+     */
+    public String getColumnDependencyKey(String tableName, long mask) {
+        return getColumnDependencyKeyPrefix(tableName) + Long.toHexString(mask);
+    }
+
+    /**
+     * 获取列级依赖关系键的前缀，拼接上十六进制的列位图即为完整的列级依赖关系键
+     * @param tableName 表名
+     * @return 列级依赖关系键前缀
+     */
+    public String getColumnDependencyKeyPrefix(String tableName) {
+        return properties.getDependencyKeyPrefix() + getTableKeyPart(tableName) + ":cols:";
+    }
+
+    /**
+     * 获取列位图索引键，记录表中存在列级依赖关系的列位图
+     * @param tableName 表名
+     * @return 列位图索引键
+     */
+    public String getColumnIndexKey(String tableName) {
+        return properties.getDependencyKeyPrefix() + getTableKeyPart(tableName) + ":colmasks";
+    }
+
+    /**
+     * 获取一个新的快照键，从索引中摘下的行级、列级依赖关系合并到快照中等待清理，与表的其它 key 位于同一个槽位
+     * @param tableName 表名
+     * @return 快照键，每次调用都不相同
+     */
+    public String newDetachedDependencyKey(String tableName) {
+        return properties.getDependencyKeyPrefix() + getTableKeyPart(tableName) + ":detached:" + UUID.randomUUID();
+    }
+
+    /**
+     * 获取业务缓存旧值副本的键
+     * @param businessKey 业务缓存键
+     * @return 旧值副本的键
+     */
+    public String getStaleKey(String businessKey) {
+        return properties.getDependencyKeyPrefix() + "stale:" + businessKey;
+    }
+
+    /**
+     * 获取业务缓存加载租约的键
+     * @param businessKey 业务缓存键
+     * @return 加载租约的键
+     */
+    public String getLeaseKey(String businessKey) {
+        return properties.getDependencyKeyPrefix() + "lease:" + businessKey;
+    }
+
+    /**
+     * key 中表名的部分，Redis Cluster 模式下使用 hash tag 包裹表名，使同一张表的版本号和依赖关系位于同一个槽位
+     * @param tableName 表名
+     * @return key 中表名的部分
+     */
+    private String getTableKeyPart(String tableName) {
+        return properties.getCluster().isEnabled() ? "{" + tableName + "}" : tableName;
     }
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package top.noaharno.cachedependency.service;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 跨节点的缓存加载租约
+ * <p>
+ * 缓存被清理后，各个节点通过 SET NX PX 争抢同一个业务缓存键的租约，只有获得租约的节点回源加载并写入缓存，
+ * 其它节点返回旧值或者短暂等待新值。租约带有过期时间，持有者异常退出时自动释放；释放时校验令牌，
+ * 不会删除过期后被其它节点获得的租约
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public class CacheReloadLease {
+
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/cache-dependency/release_lease.lua"), Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheDependencyService cacheDependencyService;
+
+    private final Duration ttl;
+
+    public CacheReloadLease(StringRedisTemplate stringRedisTemplate, CacheDependencyService cacheDependencyService, Duration ttl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheDependencyService = cacheDependencyService;
+        this.ttl = ttl;
+    }
+
+    /**
+     * 尝试获得业务缓存键的加载租约
+     *
+     * @param businessKey 业务缓存键
+     * @return 租约令牌，租约已经被其它调用方持有时返回 null
+     */
+    public String tryAcquire(String businessKey) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(cacheDependencyService.getLeaseKey(businessKey), token, ttl);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    /**
+     * 释放加载租约
+     *
+     * @param businessKey 业务缓存键
+     * @param token       获得租约时返回的令牌
+     */
+    public void release(String businessKey, String token) {
+        stringRedisTemplate.execute(RELEASE_LEASE_SCRIPT, List.of(cacheDependencyService.getLeaseKey(businessKey)), token);
+    }
+}
@@ -0,0 +1,107 @@
+package top.noaharno.cachedependency.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 列序号字典
+ * <p/>
+ * 按照配置的顺序为每张表需要跟踪的列分配序号，一组列用一个 long 类型的位图表示，
+ * 判断写操作修改的列和依赖的列是否有交集只需要一次按位与运算。每张表最多跟踪 64 列
+ */
+public class ColumnDictionary {
+
+    /**
+     * 所有列
+     */
+    public static final long ALL_COLUMNS = -1L;
+
+    /**
+     * 表名 -> (列名 -> 序号)
+     */
+    private final Map<String, Map<String, Integer>> ordinals;
+
+    /**
+     * @param trackedColumns 表名 -> 需要跟踪的列
+     */
+    public ColumnDictionary(Map<String, List<String>> trackedColumns) {
+        Map<String, Map<String, Integer>> ordinals = new HashMap<>();
+        trackedColumns.forEach((table, columns) -> {
+            if (columns.size() > Long.SIZE) {
+                throw new RuntimeException("Table " + table + " tracks more than " + Long.SIZE + " columns.");
+            }
+            Map<String, Integer> columnOrdinals = new HashMap<>();
+            for (String column : columns) {
+                columnOrdinals.putIfAbsent(normalize(column), columnOrdinals.size());
+            }
+            ordinals.put(table, Map.copyOf(columnOrdinals));
+        });
+        this.ordinals = Map.copyOf(ordinals);
+    }
+
+    /**
+     * 表是否跟踪了列
+     *
+     * @param tableName 表名
+     * @return 是否跟踪
+     */
+    public boolean isTracked(String tableName) {
+        return ordinals.containsKey(tableName);
+    }
+
+    /**
+     * 依赖关系的列位图，列必须是已经跟踪的列
+     *
+     * @param tableName 表名
+     * @param columns   依赖的列
+     * @return 列位图
+     */
+    public long dependencyMask(String tableName, String... columns) {
+        Map<String, Integer> columnOrdinals = ordinals.get(tableName);
+        if (columnOrdinals == null) {
+            throw new RuntimeException("Table " + tableName + " has no tracked columns.");
+        }
+        long mask = 0;
+        for (String column : columns) {
+            Integer ordinal = columnOrdinals.get(normalize(column));
+            if (ordinal == null) {
+                throw new RuntimeException("Column " + column + " of table " + tableName + " is not tracked.");
+            }
+            mask |= 1L << ordinal;
+        }
+        return mask;
+    }
+
+    /**
+     * 写操作修改的列位图，没有跟踪的列不会被任何依赖关系引用，直接忽略
+     *
+     * @param tableName 表名
+     * @param columns   修改的列，为 null 时表示所有列
+     * @return 列位图
+     */
+    public long changeMask(String tableName, Collection<String> columns) {
+        if (columns == null) {
+            return ALL_COLUMNS;
+        }
+        Map<String, Integer> columnOrdinals = ordinals.getOrDefault(tableName, Map.of());
+        long mask = 0;
+        for (String column : columns) {
+            Integer ordinal = columnOrdinals.get(normalize(column));
+            if (ordinal != null) {
+                mask |= 1L << ordinal;
+            }
+        }
+        return mask;
+    }
+
+    private static String normalize(String column) {
+        String name = column.trim();
+        if (name.length() > 1 && "`\"[".indexOf(name.charAt(0)) >= 0) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
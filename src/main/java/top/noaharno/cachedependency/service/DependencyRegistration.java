@@ -0,0 +1,33 @@
+package top.noaharno.cachedependency.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 一个业务缓存键的依赖关系，用于批量记录依赖关系
+ *
+ * @param businessKey 业务缓存键
+ * @param freshness   当前业务的新鲜度权重
+ * @param tables      当前业务依赖的表名
+ * @param ttl         业务缓存的过期时间，为 null 时表示不过期或者未知
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public record DependencyRegistration(String businessKey, int freshness, List<String> tables, Duration ttl) {
+
+    public DependencyRegistration {
+        tables = List.copyOf(tables);
+    }
+
+    public DependencyRegistration(String businessKey, int freshness, List<String> tables) {
+        this(businessKey, freshness, tables, null);
+    }
+
+    public static DependencyRegistration of(String businessKey, int freshness, String... tables) {
+        return new DependencyRegistration(businessKey, freshness, List.of(tables));
+    }
+
+    public static DependencyRegistration of(String businessKey, Duration ttl, int freshness, String... tables) {
+        return new DependencyRegistration(businessKey, freshness, List.of(tables), ttl);
+    }
+}
@@ -0,0 +1,88 @@
+package top.noaharno.cachedependency.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存依赖关系的本地去重过滤器
+ * <p>
+ * 记录本节点已经写入某张表某个版本的业务缓存键及其新鲜度，热点缓存反复回填时可以跳过重复的 ZADD。
+ * 每张表只保留一个版本的记录，版本变化时整张表的记录被替换；单表记录数超过上限时直接清空，保证内存有界。
+ * 过滤器只会漏判不会误判，漏判的代价仅仅是一次重复的 ZADD。
+ * 带过期时间的记录在过期之后失效，因为此后过期依赖关系清理可能已经移除了该依赖关系
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+class DependencyRegistrationFilter {
+
+    private final Map<String, TableRegistrations> registrations = new ConcurrentHashMap<>();
+
+    private final int maxEntriesPerTable;
+
+    DependencyRegistrationFilter(int maxEntriesPerTable) {
+        this.maxEntriesPerTable = maxEntriesPerTable;
+    }
+
+    /**
+     * 判断依赖关系是否已经写入过
+     *
+     * @param tableName   表名
+     * @param version     表的版本号
+     * @param businessKey 业务缓存键
+     * @param freshness   新鲜度
+     * @param expireAt    业务缓存的过期时间戳（毫秒），为 0 时表示不写入过期索引
+     * @return 已经以相同的新鲜度写入过该版本、并且过期索引无需变更时返回 true
+     */
+    boolean contains(String tableName, String version, String businessKey, int freshness, long expireAt) {
+        TableRegistrations tableRegistrations = registrations.get(tableName);
+        if (tableRegistrations == null || !tableRegistrations.version().equals(version)) {
+            return false;
+        }
+        Registration registration = tableRegistrations.members().get(businessKey);
+        if (registration == null || registration.freshness() != freshness) {
+            return false;
+        }
+        if (registration.expireAt() == 0) {
+            // 之前没有写入过期索引，这次需要写入时不能跳过
+            return expireAt == 0;
+        }
+        // 之前写入的过期索引还没有到期，过期索引会在到期后根据业务缓存剩余的过期时间重新排序
+        return expireAt != 0 && System.currentTimeMillis() < registration.expireAt();
+    }
+
+    /**
+     * 标记依赖关系已经写入
+     *
+     * @param tableName   表名
+     * @param version     表的版本号
+     * @param businessKey 业务缓存键
+     * @param freshness   新鲜度
+     * @param expireAt    业务缓存的过期时间戳（毫秒），为 0 时表示没有写入过期索引
+     */
+    void add(String tableName, String version, String businessKey, int freshness, long expireAt) {
+        TableRegistrations tableRegistrations = registrations.compute(tableName, (table, current) ->
+                current == null || !current.version().equals(version) || current.members().size() >= maxEntriesPerTable
+                        ? new TableRegistrations(version, new ConcurrentHashMap<>())
+                        : current);
+        tableRegistrations.members().put(businessKey, new Registration(freshness, expireAt));
+    }
+
+    /**
+     * 清空表的所有记录，在表版本号变化时调用
+     *
+     * @param tableName 表名
+     */
+    void clear(String tableName) {
+        registrations.remove(tableName);
+    }
+
+    /**
+     * 单张表在某个版本下已写入的业务缓存键 -> 写入时的新鲜度和过期时间
+     */
+    private record TableRegistrations(String version, Map<String, Registration> members) {
+    }
+
+    private record Registration(int freshness, long expireAt) {
+    }
+}
@@ -0,0 +1,75 @@
+package top.noaharno.cachedependency.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的单飞加载器
+ * <p>
+ * 同一个 key 同一时刻只有一个调用方执行加载，其它并发的调用方等待并共享它的结果（包括抛出的异常），
+ * 加载结束后立即移除，之后的调用方重新加载。用于缓存被清理后合并同一个节点上对同一份数据的并发回源
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public class SingleFlightLoader {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 共享了其它调用方加载结果的次数
+     */
+    private final LongAdder sharedLoads = new LongAdder();
+
+    /**
+     * 加载数据，同一个 key 正在加载时等待并返回它的结果
+     *
+     * @param key    加载的 key，通常为业务缓存键
+     * @param loader 加载逻辑
+     * @return 加载结果
+     * @throws Throwable 加载逻辑抛出的异常
+     */
+    public Object load(String key, Loader loader) throws Throwable {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            sharedLoads.increment();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        try {
+            Object result = loader.load();
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 共享了其它调用方加载结果的次数
+     *
+     * @return 次数
+     */
+    public long getSharedLoadCount() {
+        return sharedLoads.sum();
+    }
+
+    /**
+     * 加载逻辑
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        Object load() throws Throwable;
+    }
+}
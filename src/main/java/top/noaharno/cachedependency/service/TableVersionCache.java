@@ -0,0 +1,141 @@
+package top.noaharno.cachedependency.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 表版本号的进程内缓存
+ * <p>
+ * 表更新时拦截器会在 Redis 频道上广播新的版本号，每个节点订阅该频道并更新本地副本，
+ * 记录缓存依赖关系时就不需要再读取版本号。订阅断开时本地副本失效，调用方需要回退到读取 Redis
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+@Slf4j
+public class TableVersionCache implements MessageListener, SubscriptionListener {
+
+    /**
+     * 消息体中表名与版本号的分隔符，消息格式为 "表名:版本号"
+     */
+    private static final char SEPARATOR = ':';
+
+    private final Map<String, CachedVersion> versions = new ConcurrentHashMap<>();
+
+    /**
+     * 本地副本的最长有效期，用于兜底订阅期间丢失的消息
+     */
+    private final long maxAgeNanos;
+
+    /**
+     * 频道是否处于订阅状态，只有订阅正常时本地副本才可信
+     */
+    private volatile boolean subscribed;
+
+    public TableVersionCache(Duration maxAge) {
+        this.maxAgeNanos = maxAge.toNanos();
+    }
+
+    /**
+     * 获取表在本地缓存的版本号
+     *
+     * @param tableName 表名
+     * @return 版本号，本地没有可信的版本号时返回 null
+     */
+    public String get(String tableName) {
+        if (!subscribed) {
+            return null;
+        }
+        CachedVersion cachedVersion = versions.get(tableName);
+        if (cachedVersion == null) {
+            return null;
+        }
+        if (System.nanoTime() - cachedVersion.loadedAt() > maxAgeNanos) {
+            versions.remove(tableName, cachedVersion);
+            return null;
+        }
+        return cachedVersion.version();
+    }
+
+    /**
+     * 表的版本号发生变更（本节点自增或者收到广播）时更新本地缓存的版本号，版本号只会前进，乱序到达的旧版本号会被忽略。
+     * 版本号为 1 表示版本号 key 被删除或淘汰后重新初始化，此时总是接受
+     *
+     * @param tableName 表名
+     * @param version   版本号
+     */
+    public void update(String tableName, long version) {
+        CachedVersion cachedVersion = new CachedVersion(version, String.valueOf(version), System.nanoTime());
+        versions.merge(tableName, cachedVersion,
+                (previous, current) -> current.number() >= previous.number() || current.number() == 1 ? current : previous);
+    }
+
+    /**
+     * 用记录依赖关系时从 Redis 读到的版本号填充本地缓存。脚本的结果可能晚于之后的版本号变更才返回，
+     * 因此只在本地没有版本号或者读到更新的版本号时接受，旧的或者相同的版本号既不会回退本地副本，也不会延长它的有效期
+     *
+     * @param tableName 表名
+     * @param version   读到的版本号
+     */
+    public void observe(String tableName, long version) {
+        CachedVersion cachedVersion = new CachedVersion(version, String.valueOf(version), System.nanoTime());
+        versions.merge(tableName, cachedVersion, (previous, current) -> current.number() > previous.number() ? current : previous);
+    }
+
+    /**
+     * 本地副本是否可用
+     *
+     * @return 订阅正常时返回 true
+     */
+    public boolean isAvailable() {
+        return subscribed;
+    }
+
+    /**
+     * 构造广播的消息体
+     *
+     * @param tableName 表名
+     * @param version   新的版本号
+     * @return 消息体
+     */
+    public static String toMessage(String tableName, long version) {
+        return tableName + SEPARATOR + version;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.lastIndexOf(SEPARATOR);
+        if (index <= 0) {
+            log.warn("无法识别的版本号变更消息：{}", body);
+            return;
+        }
+        try {
+            update(body.substring(0, index), Long.parseLong(body.substring(index + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的版本号变更消息：{}", body);
+        }
+    }
+
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        subscribed = true;
+    }
+
+    @Override
+    public void onChannelUnsubscribed(byte[] channel, long count) {
+        // 订阅断开期间的消息会丢失，本地副本不再可信
+        subscribed = false;
+        versions.clear();
+    }
+
+    private record CachedVersion(long number, String version, long loadedAt) {
+    }
+}
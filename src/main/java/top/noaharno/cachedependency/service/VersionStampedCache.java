@@ -0,0 +1,206 @@
+package top.noaharno.cachedependency.service;
+
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 带版本戳的业务缓存，用于 {@link top.noaharno.cachedependency.constant.InvalidationModeEnum#LAZY} 模式
+ * <p>
+ * 写入时在缓存值前面加上读取数据之前各表的版本号，读取时与各表当前的版本号比较，任意一张表的版本号变化都视为未命中。
+ * 表更新时只需要自增版本号，不需要删除业务缓存，也不需要记录依赖关系。
+ * 读取缓存值和版本号在一次 MGET 中完成，开启版本号本地缓存时只需要 GET 缓存值
+ * <p>
+ * 缓存值的格式：1 字节的格式标识、1 字节的表数量、每张表 8 字节的版本号，之后为序列化后的业务数据
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public class VersionStampedCache {
+
+    /**
+     * 格式标识
+     */
+    private static final byte FORMAT = 'V';
+
+    private static final int HEADER_LENGTH = 2;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheDependencyService cacheDependencyService;
+
+    private final CacheDependencyProperties properties;
+
+    /**
+     * 表版本号的本地缓存，未开启时为 null
+     */
+    private final TableVersionCache tableVersionCache;
+
+    public VersionStampedCache(StringRedisTemplate stringRedisTemplate, CacheDependencyService cacheDependencyService,
+                               CacheDependencyProperties properties, TableVersionCache tableVersionCache) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheDependencyService = cacheDependencyService;
+        this.properties = properties;
+        this.tableVersionCache = tableVersionCache;
+    }
+
+    /**
+     * 读取业务缓存，同时取得各表当前的版本号
+     *
+     * @param businessKey 业务缓存键
+     * @param tables      业务缓存依赖的表名
+     * @return 读取结果，版本号不一致时视为未命中；未命中时使用其中的版本号写入新的缓存值
+     */
+    public Lookup lookup(String businessKey, String... tables) {
+        if (tables.length > 255) {
+            throw new RuntimeException("A version-stamped cache can depend on at most 255 tables.");
+        }
+        for (String tableName : tables) {
+            if (!properties.getTables().contains(tableName)) {
+                throw new RuntimeException("Table " + tableName + " is not in the configured tables.");
+            }
+        }
+        long[] versions = getLocalVersions(tables);
+        if (versions != null) {
+            byte[] raw = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(toBytes(businessKey)));
+            return new Lookup(unwrap(raw, versions), versions);
+        }
+        byte[][] keys = new byte[tables.length + 1][];
+        keys[0] = toBytes(businessKey);
+        for (int i = 0; i < tables.length; i++) {
+            keys[i + 1] = toBytes(cacheDependencyService.getVersionKey(tables[i]));
+        }
+        // 一次 MGET 读取缓存值和所有表的版本号
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(keys));
+        versions = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            byte[] version = values == null ? null : values.get(i + 1);
+            // 表还没有版本号时视为 0，表第一次更新后版本号变为 1，缓存随之失效
+            versions[i] = version == null ? 0 : Long.parseLong(new String(version, StandardCharsets.UTF_8));
+        }
+        return new Lookup(values == null ? null : unwrap(values.get(0), versions), versions);
+    }
+
+    /**
+     * 读取版本号与指定版本号一致的业务缓存
+     *
+     * @param businessKey 业务缓存键
+     * @param versions    期望的版本号
+     * @return 业务数据，不存在或者版本号不一致时返回 null
+     */
+    public byte[] getIfCurrent(String businessKey, long[] versions) {
+        byte[] raw = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(toBytes(businessKey)));
+        return unwrap(raw, versions);
+    }
+
+    /**
+     * 读取业务缓存的旧值副本，不校验版本号
+     *
+     * @param businessKey 业务缓存键
+     * @return 业务数据，不存在时返回 null
+     */
+    public byte[] getStale(String businessKey) {
+        byte[] raw = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(toBytes(cacheDependencyService.getStaleKey(businessKey))));
+        if (raw == null || raw.length < HEADER_LENGTH || raw[0] != FORMAT) {
+            return null;
+        }
+        int dataOffset = HEADER_LENGTH + (raw[1] & 0xFF) * Long.BYTES;
+        return raw.length < dataOffset ? null : Arrays.copyOfRange(raw, dataOffset, raw.length);
+    }
+
+    /**
+     * 写入带版本戳的业务缓存，不记录依赖关系
+     *
+     * @param businessKey 业务缓存键
+     * @param value       序列化后的业务数据
+     * @param versions    读取数据之前各表的版本号，即 {@link #lookup} 返回的版本号
+     * @param ttl         业务缓存的过期时间，为 null 或者不大于 0 时不过期
+     * @param staleTtl    旧值副本的过期时间，为 null 或者不大于 0 时不写入副本
+     */
+    public void put(String businessKey, byte[] value, long[] versions, Duration ttl, Duration staleTtl) {
+        byte[] stamped = wrap(value, versions);
+        Expiration expiration = ttl == null || ttl.isNegative() || ttl.isZero() ? Expiration.persistent() : Expiration.from(ttl);
+        boolean writeStale = staleTtl != null && !staleTtl.isNegative() && !staleTtl.isZero();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(toBytes(businessKey), stamped, expiration, SetOption.upsert());
+            if (writeStale) {
+                connection.stringCommands().set(toBytes(cacheDependencyService.getStaleKey(businessKey)), stamped,
+                        Expiration.from(staleTtl), SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 从本地缓存中获取所有表的版本号
+     *
+     * @return 版本号数组，只要有一张表没有可信的本地版本号就返回 null
+     */
+    private long[] getLocalVersions(String... tables) {
+        if (tableVersionCache == null || !tableVersionCache.isAvailable()) {
+            return null;
+        }
+        long[] versions = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            String version = tableVersionCache.get(tables[i]);
+            if (version == null) {
+                return null;
+            }
+            versions[i] = Long.parseLong(version);
+        }
+        return versions;
+    }
+
+    private static byte[] wrap(byte[] value, long[] versions) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + versions.length * Long.BYTES + value.length);
+        buffer.put(FORMAT).put((byte) versions.length);
+        for (long version : versions) {
+            buffer.putLong(version);
+        }
+        return buffer.put(value).array();
+    }
+
+    /**
+     * 校验版本戳并取出业务数据
+     *
+     * @return 业务数据，不存在、格式不正确或者版本号不一致时返回 null
+     */
+    private static byte[] unwrap(byte[] raw, long[] versions) {
+        int dataOffset = HEADER_LENGTH + versions.length * Long.BYTES;
+        if (raw == null || raw.length < dataOffset || raw[0] != FORMAT || (raw[1] & 0xFF) != versions.length) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(raw, HEADER_LENGTH, versions.length * Long.BYTES);
+        for (long version : versions) {
+            if (buffer.getLong() != version) {
+                return null;
+            }
+        }
+        return Arrays.copyOfRange(raw, dataOffset, raw.length);
+    }
+
+    private static byte[] toBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取结果
+     *
+     * @param value    版本号一致的业务数据，未命中时为 null
+     * @param versions 各表当前的版本号
+     */
+    public record Lookup(byte[] value, long[] versions) {
+    }
+}
@@ -0,0 +1,53 @@
+package top.noaharno.cachedependency.store;
+
+import top.noaharno.cachedependency.service.DependencyRegistration;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 表版本号和表级依赖关系的存储
+ * <p/>
+ * 未配置时使用内置的 Redis 实现，版本号和依赖关系通过 Lua 脚本和流水线读写；配置后 {@code CacheDependencyService}
+ * 和 {@code TableAnalysisInterceptor} 的表级依赖关系都交给该存储处理。行级、列级依赖关系、LAZY 模式、
+ * Redis Cluster 模式以及版本号本地缓存依赖 Redis 的数据结构，不能与自定义的存储同时使用
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public interface DependencyStore {
+
+    /**
+     * 在各表的当前版本下记录依赖关系
+     *
+     * @param registrations 每个业务缓存键的依赖关系
+     */
+    void recordDependencies(Collection<DependencyRegistration> registrations);
+
+    /**
+     * 在各表的当前版本下记录一个业务缓存键的依赖关系
+     *
+     * @param businessKey 业务缓存键
+     * @param freshness   当前业务的新鲜度权重
+     * @param tables      当前业务依赖的表名
+     */
+    default void recordDependencies(String businessKey, int freshness, String... tables) {
+        recordDependencies(List.of(DependencyRegistration.of(businessKey, freshness, tables)));
+    }
+
+    /**
+     * 表的当前版本号
+     *
+     * @param tableName 表名
+     * @return 版本号
+     */
+    long getVersion(String tableName);
+
+    /**
+     * 自增表的版本号，并删除上一版本依赖该表的所有业务缓存
+     *
+     * @param tableName 表名
+     * @return 删除的业务缓存数量
+     */
+    long invalidate(String tableName);
+}
@@ -0,0 +1,117 @@
+package top.noaharno.cachedependency.store;
+
+import top.noaharno.cachedependency.service.DependencyRegistration;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的依赖关系存储
+ * <p/>
+ * 每张表持有一个当前版本，版本号是原始类型的 long，依赖该版本的业务缓存键保存在并发集合中。表更新时通过 CAS
+ * 把当前版本替换成下一个版本，再分页把旧版本的业务缓存键交给清理器删除，记录和清理都不加锁。
+ * 记录依赖关系时先写入当前版本，再确认当前版本没有被替换，否则重新写入新的版本，
+ * 保证每个依赖关系要么被旧版本的清理看到，要么位于新的版本中。
+ * <p/>
+ * 业务缓存键会被 intern，同一个业务缓存键依赖多张表时只保存一份字符串；JVM 的字符串常量池会回收不再使用的字符串。
+ * 新鲜度只用于 Redis 中的延迟清理，进程内的依赖关系在表更新时立即清理，不保存新鲜度
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+public class InMemoryDependencyStore implements DependencyStore {
+
+    /**
+     * 表名 -> 当前版本，创建后不再变化
+     */
+    private final Map<String, AtomicReference<Generation>> generations;
+
+    /**
+     * 每次交给清理器的业务缓存键数量
+     */
+    private final int pageSize;
+
+    /**
+     * 删除业务缓存的清理器
+     */
+    private final Consumer<Collection<String>> evictor;
+
+    /**
+     * @param tables   涉及缓存的表
+     * @param pageSize 每次交给清理器的业务缓存键数量
+     * @param evictor  删除业务缓存的清理器
+     */
+    public InMemoryDependencyStore(Collection<String> tables, int pageSize, Consumer<Collection<String>> evictor) {
+        Map<String, AtomicReference<Generation>> map = new HashMap<>();
+        for (String table : tables) {
+            map.put(table, new AtomicReference<>(new Generation(1)));
+        }
+        this.generations = Map.copyOf(map);
+        this.pageSize = Math.max(1, pageSize);
+        this.evictor = evictor;
+    }
+
+    @Override
+    public void recordDependencies(Collection<DependencyRegistration> registrations) {
+        for (DependencyRegistration registration : registrations) {
+            String businessKey = registration.businessKey().intern();
+            for (String table : registration.tables()) {
+                AtomicReference<Generation> current = getGeneration(table);
+                Generation generation;
+                do {
+                    generation = current.get();
+                    generation.businessKeys.add(businessKey);
+                } while (current.get() != generation);
+            }
+        }
+    }
+
+    @Override
+    public long getVersion(String tableName) {
+        return getGeneration(tableName).get().version;
+    }
+
+    @Override
+    public long invalidate(String tableName) {
+        Generation previous = getGeneration(tableName).getAndUpdate(generation -> new Generation(generation.version + 1));
+        long evicted = 0;
+        List<String> page = new ArrayList<>(Math.min(pageSize, previous.businessKeys.size()));
+        for (String businessKey : previous.businessKeys) {
+            page.add(businessKey);
+            if (page.size() >= pageSize) {
+                evictor.accept(page);
+                evicted += page.size();
+                page = new ArrayList<>(pageSize);
+            }
+        }
+        if (!page.isEmpty()) {
+            evictor.accept(page);
+            evicted += page.size();
+        }
+        return evicted;
+    }
+
+    private AtomicReference<Generation> getGeneration(String tableName) {
+        AtomicReference<Generation> generation = generations.get(tableName);
+        if (generation == null) {
+            throw new RuntimeException("Table " + tableName + " is not in the configured tables.");
+        }
+        return generation;
+    }
+
+    /**
+     * 表的一个版本以及依赖该版本的业务缓存键
+     */
+    private static final class Generation {
+
+        private final long version;
+
+        private final Set<String> businessKeys = ConcurrentHashMap.newKeySet();
+
+        private Generation(long version) {
+            this.version = version;
+        }
+    }
+}
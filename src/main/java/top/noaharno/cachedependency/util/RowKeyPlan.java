@@ -0,0 +1,17 @@
+package top.noaharno.cachedependency.util;
+
+import java.util.List;
+
+/**
+ * 写操作影响的行：由 SQL 中的字面量和 JDBC 参数组成的主键值，执行时再从绑定参数中取出参数对应的值
+ *
+ * @param literals         SQL 中直接写出的主键值
+ * @param parameterIndexes 主键值对应的 JDBC 参数序号，从 1 开始
+ */
+public record RowKeyPlan(List<String> literals, List<Integer> parameterIndexes) {
+
+    public RowKeyPlan {
+        literals = List.copyOf(literals);
+        parameterIndexes = List.copyOf(parameterIndexes);
+    }
+}
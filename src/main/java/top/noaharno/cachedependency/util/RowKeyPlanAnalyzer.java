@@ -0,0 +1,209 @@
+package top.noaharno.cachedependency.util;
+
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.JdbcParameter;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.ParenthesedExpressionList;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.delete.Delete;
+import net.sf.jsqlparser.statement.insert.Insert;
+import net.sf.jsqlparser.statement.select.Values;
+import net.sf.jsqlparser.statement.update.Update;
+import net.sf.jsqlparser.statement.update.UpdateSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 从单表写操作中分析出影响的行
+ * <p/>
+ * 只识别 WHERE 条件中主键列的等值和 IN 条件（通过 AND、OR 组合），以及 INSERT 中显式指定的主键值，
+ * 无法确定影响哪些行时不返回该表的分析结果，由调用方按整表清理
+ */
+final class RowKeyPlanAnalyzer {
+
+    private RowKeyPlanAnalyzer() {
+    }
+
+    /**
+     * 分析写操作影响的行
+     *
+     * @param statement     解析后的 SQL
+     * @param rowKeyColumns 表名 -> 主键列
+     * @return 表名 -> 影响的行，无法确定时不包含该表
+     */
+    static Map<String, RowKeyPlan> analyze(Statement statement, Map<String, String> rowKeyColumns) {
+        RowKeyPlan plan = null;
+        Table table = null;
+        if (statement instanceof Update update) {
+            table = update.getTable();
+            plan = analyzeUpdate(update, rowKeyColumns.get(table.getFullyQualifiedName()));
+        } else if (statement instanceof Delete delete) {
+            table = delete.getTable();
+            plan = analyzeDelete(delete, rowKeyColumns.get(table.getFullyQualifiedName()));
+        } else if (statement instanceof Insert insert) {
+            table = insert.getTable();
+            plan = analyzeInsert(insert, rowKeyColumns.get(table.getFullyQualifiedName()));
+        }
+        return plan == null ? Map.of() : Map.of(table.getFullyQualifiedName(), plan);
+    }
+
+    private static RowKeyPlan analyzeUpdate(Update update, String keyColumn) {
+        if (keyColumn == null || isNotEmpty(update.getWithItemsList()) || isNotEmpty(update.getJoins())
+                || isNotEmpty(update.getStartJoins()) || update.getFromItem() != null) {
+            return null;
+        }
+        for (UpdateSet updateSet : update.getUpdateSets()) {
+            for (Column column : updateSet.getColumns()) {
+                // 修改主键本身时，新旧主键都可能存在依赖关系
+                if (column.getColumnName().equalsIgnoreCase(keyColumn)) {
+                    return null;
+                }
+            }
+        }
+        return resolve(update.getWhere(), update.getTable(), keyColumn);
+    }
+
+    private static RowKeyPlan analyzeDelete(Delete delete, String keyColumn) {
+        if (keyColumn == null || isNotEmpty(delete.getWithItemsList()) || isNotEmpty(delete.getTables())
+                || isNotEmpty(delete.getJoins()) || isNotEmpty(delete.getUsingList())) {
+            return null;
+        }
+        return resolve(delete.getWhere(), delete.getTable(), keyColumn);
+    }
+
+    private static RowKeyPlan analyzeInsert(Insert insert, String keyColumn) {
+        if (keyColumn == null || isNotEmpty(insert.getWithItemsList()) || insert.getDuplicateUpdateSets() != null
+                || insert.getConflictAction() != null || insert.getSetUpdateSets() != null || insert.getColumns() == null) {
+            return null;
+        }
+        int keyIndex = -1;
+        for (int i = 0; i < insert.getColumns().size(); i++) {
+            if (insert.getColumns().get(i).getColumnName().equalsIgnoreCase(keyColumn)) {
+                keyIndex = i;
+            }
+        }
+        if (keyIndex < 0) {
+            // 由数据库生成主键时无法确定新行的主键，之前缓存的该主键不存在的结果也需要清理
+            return null;
+        }
+        if (!(insert.getSelect() instanceof Values values)) {
+            // INSERT ... SELECT 无法确定主键
+            return null;
+        }
+        ExpressionList<?> expressions = values.getExpressions();
+        List<ExpressionList<?>> rows = new ArrayList<>();
+        if (expressions.stream().allMatch(expression -> expression instanceof ExpressionList<?>)) {
+            expressions.forEach(expression -> rows.add((ExpressionList<?>) expression));
+        } else {
+            rows.add(expressions);
+        }
+        PlanBuilder builder = new PlanBuilder();
+        for (ExpressionList<?> row : rows) {
+            if (keyIndex >= row.size() || !builder.add(row.get(keyIndex))) {
+                return null;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 分析 WHERE 条件中主键列的取值，无法确定时返回 null
+     */
+    private static RowKeyPlan resolve(Expression where, Table table, String keyColumn) {
+        PlanBuilder builder = new PlanBuilder();
+        return where != null && collect(where, table, keyColumn, builder) ? builder.build() : null;
+    }
+
+    private static boolean collect(Expression expression, Table table, String keyColumn, PlanBuilder builder) {
+        if (expression instanceof ParenthesedExpressionList<?> parenthesed && parenthesed.size() == 1) {
+            return collect(parenthesed.get(0), table, keyColumn, builder);
+        }
+        if (expression instanceof AndExpression and) {
+            // 任意一侧能确定主键即可，另一侧只会进一步缩小范围
+            PlanBuilder left = new PlanBuilder();
+            if (collect(and.getLeftExpression(), table, keyColumn, left)) {
+                return builder.addAll(left);
+            }
+            return collect(and.getRightExpression(), table, keyColumn, builder);
+        }
+        if (expression instanceof OrExpression or) {
+            return collect(or.getLeftExpression(), table, keyColumn, builder)
+                    && collect(or.getRightExpression(), table, keyColumn, builder);
+        }
+        if (expression instanceof EqualsTo equalsTo) {
+            if (isKeyColumn(equalsTo.getLeftExpression(), table, keyColumn)) {
+                return builder.add(equalsTo.getRightExpression());
+            }
+            return isKeyColumn(equalsTo.getRightExpression(), table, keyColumn) && builder.add(equalsTo.getLeftExpression());
+        }
+        if (expression instanceof InExpression in && !in.isNot() && isKeyColumn(in.getLeftExpression(), table, keyColumn)
+                && in.getRightExpression() instanceof ExpressionList<?> values) {
+            for (Expression value : values) {
+                if (!builder.add(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isKeyColumn(Expression expression, Table table, String keyColumn) {
+        if (!(expression instanceof Column column) || !column.getColumnName().equalsIgnoreCase(keyColumn)) {
+            return false;
+        }
+        Table qualifier = column.getTable();
+        if (qualifier == null || qualifier.getName() == null) {
+            return true;
+        }
+        return qualifier.getName().equalsIgnoreCase(table.getName())
+                || (table.getAlias() != null && qualifier.getName().equalsIgnoreCase(table.getAlias().getName()));
+    }
+
+    private static boolean isNotEmpty(List<?> list) {
+        return list != null && !list.isEmpty();
+    }
+
+    /**
+     * 收集主键值
+     */
+    private static final class PlanBuilder {
+
+        private final List<String> literals = new ArrayList<>();
+
+        private final List<Integer> parameterIndexes = new ArrayList<>();
+
+        private boolean add(Expression value) {
+            if (value instanceof JdbcParameter parameter && parameter.getIndex() != null) {
+                parameterIndexes.add(parameter.getIndex());
+            } else if (value instanceof LongValue longValue) {
+                literals.add(longValue.getStringValue());
+            } else if (value instanceof StringValue stringValue) {
+                literals.add(stringValue.getValue());
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        private boolean addAll(PlanBuilder other) {
+            literals.addAll(other.literals);
+            parameterIndexes.addAll(other.parameterIndexes);
+            return true;
+        }
+
+        private RowKeyPlan build() {
+            return new RowKeyPlan(literals, parameterIndexes);
+        }
+    }
+}
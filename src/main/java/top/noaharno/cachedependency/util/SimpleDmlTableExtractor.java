@@ -0,0 +1,270 @@
+package top.noaharno.cachedependency.util;
+
+import java.util.Set;
+
+/**
+ * 单表 DML 的轻量级表名提取器
+ * <p/>
+ * 直接在 SQL 字符串上按位置扫描词法单元，只识别以下三种单表写操作，不构建语法树，除最终的表名外不分配对象：
+ * <ul>
+ *     <li>INSERT INTO table (...) VALUES ... / INSERT INTO table SET ...</li>
+ *     <li>UPDATE table [[AS] alias] SET ...</li>
+ *     <li>DELETE FROM table [[AS] alias] [WHERE ...]</li>
+ * </ul>
+ * 遇到多表、子查询、CTE、注释、带引号的标识符或无法识别的语法时返回 null，由调用方交给 JSqlParser 完整解析
+ */
+final class SimpleDmlTableExtractor {
+
+    /**
+     * 不能作为表名或别名的关键字
+     */
+    private static final String[] RESERVED_WORDS = {
+            "SET", "WHERE", "ORDER", "LIMIT", "RETURNING", "ONLY", "VALUES", "VALUE", "SELECT", "FROM", "JOIN",
+            "USING", "AS", "WITH", "INTO", "ON", "PARTITION", "IGNORE", "LOW_PRIORITY", "HIGH_PRIORITY", "DELAYED", "QUICK"
+    };
+
+    /**
+     * 出现在表名之后时说明涉及其它表的关键字
+     */
+    private static final String[] MULTI_TABLE_WORDS = {"SELECT", "FROM", "JOIN", "USING", "WITH", "UNION"};
+
+    private SimpleDmlTableExtractor() {
+    }
+
+    /**
+     * 提取单表 DML 的表名
+     *
+     * @param sql SQL 语句
+     * @return 只包含目标表的不可变集合，无法快速识别时返回 null
+     */
+    static Set<String> extract(String sql) {
+        int pos = skipWhitespace(sql, 0);
+        int end = identifierEnd(sql, pos);
+        if (end < 0) {
+            return null;
+        }
+        if (matches(sql, pos, end, "INSERT")) {
+            return extractInsert(sql, end);
+        }
+        if (matches(sql, pos, end, "UPDATE")) {
+            return extractUpdate(sql, end);
+        }
+        if (matches(sql, pos, end, "DELETE")) {
+            return extractDelete(sql, end);
+        }
+        return null;
+    }
+
+    private static Set<String> extractInsert(String sql, int pos) {
+        pos = expectKeyword(sql, pos, "INTO");
+        if (pos < 0) {
+            return null;
+        }
+        int tableStart = skipWhitespace(sql, pos);
+        int tableEnd = tableNameEnd(sql, tableStart);
+        if (tableEnd < 0) {
+            return null;
+        }
+        int next = skipWhitespace(sql, tableEnd);
+        if (next < sql.length() && sql.charAt(next) == '(') {
+            return result(sql, tableStart, tableEnd, next + 1);
+        }
+        int nextEnd = identifierEnd(sql, next);
+        if (nextEnd > 0 && (matches(sql, next, nextEnd, "VALUES") || matches(sql, next, nextEnd, "VALUE")
+                || matches(sql, next, nextEnd, "SET"))) {
+            return result(sql, tableStart, tableEnd, nextEnd);
+        }
+        return null;
+    }
+
+    private static Set<String> extractUpdate(String sql, int pos) {
+        int tableStart = skipWhitespace(sql, pos);
+        int tableEnd = tableNameEnd(sql, tableStart);
+        if (tableEnd < 0) {
+            return null;
+        }
+        int next = skipAlias(sql, tableEnd);
+        if (next < 0) {
+            return null;
+        }
+        int nextStart = skipWhitespace(sql, next);
+        int nextEnd = identifierEnd(sql, nextStart);
+        if (nextEnd < 0 || !matches(sql, nextStart, nextEnd, "SET")) {
+            return null;
+        }
+        return result(sql, tableStart, tableEnd, nextEnd);
+    }
+
+    private static Set<String> extractDelete(String sql, int pos) {
+        pos = expectKeyword(sql, pos, "FROM");
+        if (pos < 0) {
+            return null;
+        }
+        int tableStart = skipWhitespace(sql, pos);
+        int tableEnd = tableNameEnd(sql, tableStart);
+        if (tableEnd < 0) {
+            return null;
+        }
+        int next = skipAlias(sql, tableEnd);
+        if (next < 0) {
+            return null;
+        }
+        int nextStart = skipWhitespace(sql, next);
+        if (nextStart == sql.length()) {
+            return result(sql, tableStart, tableEnd, nextStart);
+        }
+        int nextEnd = identifierEnd(sql, nextStart);
+        if (nextEnd > 0 && (matches(sql, nextStart, nextEnd, "WHERE") || matches(sql, nextStart, nextEnd, "ORDER")
+                || matches(sql, nextStart, nextEnd, "LIMIT"))) {
+            return result(sql, tableStart, tableEnd, nextEnd);
+        }
+        return null;
+    }
+
+    /**
+     * 确认表名之后的部分不涉及其它表，返回表名
+     */
+    private static Set<String> result(String sql, int tableStart, int tableEnd, int restStart) {
+        return isSingleTableTail(sql, restStart) ? Set.of(sql.substring(tableStart, tableEnd)) : null;
+    }
+
+    /**
+     * 扫描表名之后的部分，跳过字符串字面量，遇到子查询、多表关键字、注释或多条语句时返回 false
+     */
+    private static boolean isSingleTableTail(String sql, int pos) {
+        int length = sql.length();
+        while (pos < length) {
+            char c = sql.charAt(pos);
+            if (c == '\'') {
+                pos = stringLiteralEnd(sql, pos);
+                if (pos < 0) {
+                    return false;
+                }
+            } else if (c == '"' || c == '`' || c == '[' || c == ';' || c == '#'
+                    || (c == '-' && pos + 1 < length && sql.charAt(pos + 1) == '-')
+                    || (c == '/' && pos + 1 < length && sql.charAt(pos + 1) == '*')) {
+                return false;
+            } else if (isIdentifierStart(c)) {
+                int end = identifierEnd(sql, pos);
+                for (String word : MULTI_TABLE_WORDS) {
+                    if (matches(sql, pos, end, word)) {
+                        return false;
+                    }
+                }
+                pos = end;
+            } else if (Character.isDigit(c)) {
+                // 数字字面量，例如 1e10，避免把其中的字母当作标识符
+                while (pos < length && (Character.isLetterOrDigit(sql.charAt(pos)) || sql.charAt(pos) == '.')) {
+                    pos++;
+                }
+            } else {
+                pos++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 跳过表名之后可选的别名
+     *
+     * @return 别名之后的位置，别名不合法时返回 -1
+     */
+    private static int skipAlias(String sql, int pos) {
+        int start = skipWhitespace(sql, pos);
+        int end = identifierEnd(sql, start);
+        if (end < 0) {
+            return pos;
+        }
+        if (matches(sql, start, end, "AS")) {
+            start = skipWhitespace(sql, end);
+            end = identifierEnd(sql, start);
+            return end < 0 || isReserved(sql, start, end) ? -1 : end;
+        }
+        return isReserved(sql, start, end) ? pos : end;
+    }
+
+    /**
+     * 跳过空白后必须是指定的关键字
+     *
+     * @return 关键字之后的位置，不匹配时返回 -1
+     */
+    private static int expectKeyword(String sql, int pos, String keyword) {
+        int start = skipWhitespace(sql, pos);
+        int end = identifierEnd(sql, start);
+        return end > 0 && matches(sql, start, end, keyword) ? end : -1;
+    }
+
+    /**
+     * 表名的结束位置，支持 schema.table 的形式，不支持带引号的标识符
+     *
+     * @return 表名之后的位置，不是合法的表名时返回 -1
+     */
+    private static int tableNameEnd(String sql, int pos) {
+        int end = identifierEnd(sql, pos);
+        if (end < 0 || isReserved(sql, pos, end)) {
+            return -1;
+        }
+        while (end < sql.length() && sql.charAt(end) == '.') {
+            end = identifierEnd(sql, end + 1);
+            if (end < 0) {
+                return -1;
+            }
+        }
+        return end;
+    }
+
+    private static int identifierEnd(String sql, int pos) {
+        if (pos >= sql.length() || !isIdentifierStart(sql.charAt(pos))) {
+            return -1;
+        }
+        int end = pos + 1;
+        while (end < sql.length() && isIdentifierPart(sql.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int stringLiteralEnd(String sql, int pos) {
+        for (int i = pos + 1; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '\'') {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                    i++;
+                } else {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String sql, int pos) {
+        while (pos < sql.length() && Character.isWhitespace(sql.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isReserved(String sql, int start, int end) {
+        for (String word : RESERVED_WORDS) {
+            if (matches(sql, start, end, word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String sql, int start, int end, String keyword) {
+        return end - start == keyword.length() && sql.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -0,0 +1,206 @@
+package top.noaharno.cachedependency.util;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.JSQLParserException;
+import org.apache.commons.lang3.StringUtils;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil.ParseCacheStats;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil.SqlAnalysis;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQL 解析缓存
+ * <p/>
+ * 按照 SQL 的 ID 和绑定后的 SQL 缓存分析结果，超过容量时按照先进先出淘汰。每条 SQL 只解析一次：
+ * 第一个未命中的线程放入一个 Future 后在 Map 之外解析，同一条 SQL 并发未命中的线程等待该 Future，
+ * 慢解析不会阻塞其它 SQL 的读取。
+ * 解析失败的 SQL 缓存为空的分析结果，只记录一次日志，不会在每次执行时重复解析。
+ * 每个拦截器持有自己的实例，分析影响行和修改列的配置互不影响
+ *
+ * @author NoahArno
+ * @since 1.0.0
+ */
+@Slf4j
+public class SqlAnalysisCache {
+
+    /**
+     * SQL 解析缓存，key 为 SQL 的 ID 和绑定后的 SQL，动态 SQL 在同一个 ID 下生成的不同 SQL 分别缓存
+     */
+    private final Map<SqlKey, CompletableFuture<SqlAnalysis>> analyses = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存 key 的写入顺序，超过容量时按照先进先出淘汰
+     */
+    private final Queue<SqlKey> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder parseNanos = new LongAdder();
+
+    private final int maxSize;
+
+    /**
+     * 表名 -> 主键列，只有配置了主键列的表才分析写操作影响的行
+     */
+    private final Map<String, String> rowKeyColumns;
+
+    /**
+     * 跟踪了列的表，只有这些表才分析 UPDATE 修改的列
+     */
+    private final Set<String> columnTrackedTables;
+
+    private final Parser parser;
+
+    /**
+     * @param maxSize             最多缓存的 SQL 数量
+     * @param rowKeyColumns       表名 -> 主键列
+     * @param columnTrackedTables 跟踪了列的表
+     */
+    public SqlAnalysisCache(int maxSize, Map<String, String> rowKeyColumns, Set<String> columnTrackedTables) {
+        this(maxSize, rowKeyColumns, columnTrackedTables, SqlAnalysisUtil::parse);
+    }
+
+    SqlAnalysisCache(int maxSize, Map<String, String> rowKeyColumns, Set<String> columnTrackedTables, Parser parser) {
+        this.maxSize = Math.max(1, maxSize);
+        this.rowKeyColumns = Map.copyOf(rowKeyColumns);
+        this.columnTrackedTables = Set.copyOf(columnTrackedTables);
+        this.parser = parser;
+    }
+
+    /**
+     * 获取SQL涉及的表，以及写操作影响的行和修改的列
+     *
+     * @param sqlId     Mybatis 中对应 SQL 的 ID
+     * @param sqlDetail SQL 语句
+     * @return 分析结果，解析失败时返回空的分析结果
+     */
+    public SqlAnalysis getAnalysis(String sqlId, String sqlDetail) {
+        if (StringUtils.isAnyBlank(sqlId, sqlDetail)) {
+            return SqlAnalysis.EMPTY;
+        }
+        SqlKey key = new SqlKey(sqlId, sqlDetail);
+        CompletableFuture<SqlAnalysis> analysis = analyses.get(key);
+        if (analysis == null) {
+            CompletableFuture<SqlAnalysis> parsing = new CompletableFuture<>();
+            analysis = analyses.putIfAbsent(key, parsing);
+            if (analysis == null) {
+                // 只有放入 Future 的线程解析，解析在 Map 之外进行
+                return parseAndPublish(key, parsing);
+            }
+        }
+        hits.increment();
+        try {
+            return analysis.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private SqlAnalysis parseAndPublish(SqlKey key, CompletableFuture<SqlAnalysis> parsing) {
+        SqlAnalysis analysis;
+        try {
+            analysis = parse(key);
+        } catch (RuntimeException e) {
+            // 非语法错误不缓存，之后重新解析
+            analyses.remove(key, parsing);
+            parsing.completeExceptionally(e);
+            throw e;
+        }
+        parsing.complete(analysis);
+        if (analyses.get(key) == parsing) {
+            insertionOrder.offer(key);
+            size.incrementAndGet();
+            evictIfNecessary();
+        }
+        return analysis;
+    }
+
+    /**
+     * 直接分析 SQL，不经过解析缓存，使用与缓存相同的影响行和修改列配置
+     *
+     * @param sqlDetail SQL 语句
+     * @return 分析结果，解析失败时返回 null
+     */
+    public SqlAnalysis analyze(String sqlDetail) {
+        return SqlAnalysisUtil.analyze(sqlDetail, rowKeyColumns, columnTrackedTables);
+    }
+
+    /**
+     * 解析缓存的统计信息
+     *
+     * @return 统计信息
+     */
+    public ParseCacheStats getStats() {
+        return new ParseCacheStats(hits.sum(), misses.sum(), evictions.sum(), size.get(), parseNanos.sum());
+    }
+
+    /**
+     * 清空解析缓存
+     */
+    public void clear() {
+        analyses.clear();
+        insertionOrder.clear();
+        size.set(0);
+    }
+
+    /**
+     * 使用 jsqlparser 解析 SQL，解析失败时返回空的分析结果
+     */
+    private SqlAnalysis parse(SqlKey key) {
+        misses.increment();
+        long start = System.nanoTime();
+        try {
+            return parser.parse(key.sql(), rowKeyColumns, columnTrackedTables);
+        } catch (JSQLParserException e) {
+            log.warn("解析SQL失败，该SQL不会清理任何缓存，之后不再重复解析：sqlId={}, sql={}", key.sqlId(), key.sql(), e);
+            return SqlAnalysis.EMPTY;
+        } finally {
+            parseNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private void evictIfNecessary() {
+        while (size.get() > maxSize) {
+            SqlKey eldest = insertionOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            if (analyses.remove(eldest) != null) {
+                size.decrementAndGet();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * SQL 解析器，测试时可以替换
+     */
+    @FunctionalInterface
+    interface Parser {
+
+        SqlAnalysis parse(String sql, Map<String, String> keyColumns, Set<String> trackedTables) throws JSQLParserException;
+    }
+
+    /**
+     * 解析缓存的 key，哈希值由 SQL 的 ID 和 SQL 文本计算，相等时再比较完整的 SQL，避免指纹冲突导致结果错误
+     *
+     * @param sqlId SQL 的 ID
+     * @param sql   绑定后的 SQL
+     */
+    private record SqlKey(String sqlId, String sql) {
+    }
+}
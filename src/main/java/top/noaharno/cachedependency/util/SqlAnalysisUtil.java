@@ -2,9 +2,11 @@ package top.noaharno.cachedependency.util;
 
 import lombok.extern.slf4j.Slf4j;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.update.Update;
+import net.sf.jsqlparser.statement.update.UpdateSet;
 import net.sf.jsqlparser.util.TablesNamesFinder;
-import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
 
@@ -16,32 +18,125 @@ import java.util.*;
 @Slf4j
 public class SqlAnalysisUtil {
 
-    private static final Map<String, Set<String>> sqlTableMap = new HashMap<>();
+    /**
+     * 解析缓存的默认容量
+     */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * {@link #getTableSet} 使用的解析缓存，只分析涉及的表
+     */
+    private static final SqlAnalysisCache DEFAULT_CACHE = new SqlAnalysisCache(DEFAULT_MAX_SIZE, Map.of(), Set.of());
 
     /**
      * 获取SQL中的表名
      *
      * @param sqlId     Mybatis 中对应 SQL 的 ID，例如 top.noah.demo.mapper.UserMapper.update
      * @param sqlDetail SQL 语句
-     * @return 表名集合
+     * @return 不可变的表名集合
      */
     public static Set<String> getTableSet(String sqlId, String sqlDetail) {
-        if (StringUtils.isAnyBlank(sqlId, sqlDetail)) {
-            return new HashSet<>();
-        }
-        if (sqlTableMap.containsKey(sqlId)) {
-            return sqlTableMap.get(sqlId);
-        }
+        return DEFAULT_CACHE.getAnalysis(sqlId, sqlDetail).tables();
+    }
+
+    /**
+     * 直接解析 SQL 中的表名，不经过解析缓存
+     *
+     * @param sqlDetail SQL 语句
+     * @return 不可变的表名集合，解析失败时返回 null
+     */
+    public static Set<String> parseTableSet(String sqlDetail) {
+        SqlAnalysis analysis = analyze(sqlDetail, Map.of(), Set.of());
+        return analysis == null ? null : analysis.tables();
+    }
+
+    /**
+     * 直接分析 SQL，不经过解析缓存
+     *
+     * @param sqlDetail           SQL 语句
+     * @param rowKeyColumns       表名 -> 主键列，只有配置了主键列的表才分析写操作影响的行
+     * @param columnTrackedTables 跟踪了列的表，只有这些表才分析 UPDATE 修改的列
+     * @return 分析结果，解析失败时返回 null
+     */
+    public static SqlAnalysis analyze(String sqlDetail, Map<String, String> rowKeyColumns, Set<String> columnTrackedTables) {
         try {
-            // 使用 jsqlparser 解析 SQL，获取涉及的表
-            Statement statement = CCJSqlParserUtil.parse(sqlDetail);
-            TablesNamesFinder<Object> finder = new TablesNamesFinder<>();
-            Set<String> tables = finder.getTables(statement);
-            sqlTableMap.put(sqlId, tables);
-            return tables;
+            return parse(sqlDetail, rowKeyColumns, columnTrackedTables);
         } catch (net.sf.jsqlparser.JSQLParserException e) {
             log.warn("解析SQL失败：{}", e.getMessage(), e);
-            return new HashSet<>();
+            return null;
+        }
+    }
+
+    /**
+     * 使用 jsqlparser 分析 SQL 涉及的表、影响的行和修改的列
+     */
+    static SqlAnalysis parse(String sqlDetail, Map<String, String> keyColumns, Set<String> trackedTables)
+            throws net.sf.jsqlparser.JSQLParserException {
+        // 单表的 INSERT/UPDATE/DELETE 直接扫描出表名，其它语句或需要分析影响行、修改列的表再使用 jsqlparser 完整解析
+        Set<String> tables = SimpleDmlTableExtractor.extract(sqlDetail);
+        if (tables != null && !needsDetail(tables, keyColumns, trackedTables)) {
+            return new SqlAnalysis(tables, Map.of(), Map.of());
         }
+        Statement statement = CCJSqlParserUtil.parse(sqlDetail);
+        TablesNamesFinder<Object> finder = new TablesNamesFinder<>();
+        tables = Set.copyOf(finder.getTables(statement));
+        if (!needsDetail(tables, keyColumns, trackedTables)) {
+            return new SqlAnalysis(tables, Map.of(), Map.of());
+        }
+        return new SqlAnalysis(tables, RowKeyPlanAnalyzer.analyze(statement, keyColumns), getUpdatedColumns(statement, trackedTables));
+    }
+
+    private static boolean needsDetail(Set<String> tables, Map<String, String> keyColumns, Set<String> trackedTables) {
+        if (keyColumns.isEmpty() && trackedTables.isEmpty()) {
+            return false;
+        }
+        for (String table : tables) {
+            if (keyColumns.containsKey(table) || trackedTables.contains(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 单表 UPDATE 修改的列，INSERT、DELETE 以及多表 UPDATE 视为修改所有列，不返回结果
+     */
+    private static Map<String, Set<String>> getUpdatedColumns(Statement statement, Set<String> trackedTables) {
+        if (!(statement instanceof Update update) || !trackedTables.contains(update.getTable().getFullyQualifiedName())
+                || (update.getJoins() != null && !update.getJoins().isEmpty())
+                || (update.getStartJoins() != null && !update.getStartJoins().isEmpty()) || update.getFromItem() != null) {
+            return Map.of();
+        }
+        Set<String> columns = new HashSet<>();
+        for (UpdateSet updateSet : update.getUpdateSets()) {
+            for (Column column : updateSet.getColumns()) {
+                columns.add(column.getColumnName());
+            }
+        }
+        return Map.of(update.getTable().getFullyQualifiedName(), Set.copyOf(columns));
+    }
+
+    /**
+     * SQL 的分析结果
+     *
+     * @param tables         SQL 涉及的表
+     * @param rowKeyPlans    表名 -> 写操作影响的行，只包含配置了主键列并且能够确定影响行的表
+     * @param updatedColumns 表名 -> UPDATE 修改的列，只包含跟踪了列的单表 UPDATE，其它情况视为修改所有列
+     */
+    public record SqlAnalysis(Set<String> tables, Map<String, RowKeyPlan> rowKeyPlans, Map<String, Set<String>> updatedColumns) {
+
+        public static final SqlAnalysis EMPTY = new SqlAnalysis(Set.of(), Map.of(), Map.of());
+    }
+
+    /**
+     * 解析缓存的统计信息
+     *
+     * @param hits       命中次数
+     * @param misses     未命中次数（即实际解析次数）
+     * @param evictions  淘汰次数
+     * @param size       当前缓存的 SQL 数量
+     * @param parseNanos 累计的解析耗时（纳秒）
+     */
+    public record ParseCacheStats(long hits, long misses, long evictions, int size, long parseNanos) {
     }
 }
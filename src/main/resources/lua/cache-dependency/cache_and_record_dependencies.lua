@@ -0,0 +1,47 @@
+-- 原子地写入业务缓存并记录缓存依赖关系
+-- KEYS[1]         : 业务缓存键
+-- KEYS[2]         : 业务缓存旧值副本的 key
+-- KEYS[2 + i]     : 第 i 张表的版本号 key
+-- KEYS[2 + n + i] : 第 i 张表的过期索引 key，未开启过期依赖关系清理时不传
+-- ARGV[1]         : 序列化后的业务缓存值
+-- ARGV[2]         : 业务缓存的过期时间（毫秒），为 0 时不过期
+-- ARGV[3]         : 旧值副本的过期时间（毫秒），为 0 时不写入副本
+-- ARGV[4]         : 业务的新鲜度
+-- ARGV[5]         : 业务缓存键所在分片的后缀，未分片时为空字符串
+-- ARGV[6]         : 业务缓存的过期时间戳（毫秒），为 0 时从过期索引中移除，为空字符串时不访问过期索引
+-- ARGV[6 + i]     : 第 i 张表的依赖关系 key 前缀（拼接版本号和分片后缀后即为完整的依赖关系 key）
+-- 返回值          : 每张表记录依赖时所使用的版本号
+local businessKey = KEYS[1]
+local ttl = tonumber(ARGV[2])
+if ttl > 0 then
+    redis.call('SET', businessKey, ARGV[1], 'PX', ttl)
+else
+    redis.call('SET', businessKey, ARGV[1])
+end
+local staleTtl = tonumber(ARGV[3])
+if staleTtl > 0 then
+    redis.call('SET', KEYS[2], ARGV[1], 'PX', staleTtl)
+end
+local freshness = ARGV[4]
+local shardSuffix = ARGV[5]
+local expireAt = ARGV[6]
+local tableCount = #ARGV - 6
+local versions = {}
+for i = 1, tableCount do
+    local versionKey = KEYS[2 + i]
+    local version = redis.call('GET', versionKey)
+    if not version then
+        -- 表没有版本号，则设置初始版本号为 1
+        version = '1'
+        redis.call('SET', versionKey, version)
+    end
+    redis.call('ZADD', ARGV[6 + i] .. version .. shardSuffix, freshness, businessKey)
+    if expireAt == '0' then
+        redis.call('ZREM', KEYS[2 + tableCount + i], version .. ':' .. businessKey)
+    elseif expireAt ~= '' then
+        -- 过期时间只能推后，避免较短的过期时间使依赖关系被提前检查
+        redis.call('ZADD', KEYS[2 + tableCount + i], 'GT', expireAt, version .. ':' .. businessKey)
+    end
+    versions[i] = version
+end
+return versions
@@ -0,0 +1,43 @@
+-- 从索引中摘下行级（或列级）依赖关系，合并到一个新的快照 ZSET 中，之后像旧版本的表级依赖关系一样按照新鲜度级别清理。
+-- 摘下之后写入的依赖关系进入新的 ZSET 并重新加入索引，不会被快照的清理误删
+-- KEYS[1]     : 行索引（或列位图索引）key
+-- KEYS[2]     : 快照 key，由调用方保证唯一
+-- ARGV[1]     : 依赖关系 key 前缀，拼接索引成员后即为完整的依赖关系 key
+-- ARGV[2]     : 没有指定索引成员时，从索引中弹出的成员数量
+-- ARGV[2 + i] : 需要摘下的第 i 个索引成员
+-- 返回值      : 摘下的索引成员数量
+local members
+if #ARGV > 2 then
+    members = {}
+    for i = 3, #ARGV do
+        members[#members + 1] = ARGV[i]
+    end
+    redis.call('SREM', KEYS[1], unpack(members))
+else
+    members = redis.call('SPOP', KEYS[1], ARGV[2])
+end
+if #members == 0 then
+    return 0
+end
+if #members == 1 then
+    -- 单个依赖关系直接改名，不需要复制成员
+    local source = ARGV[1] .. members[1]
+    if redis.call('EXISTS', source) == 1 then
+        redis.call('RENAME', source, KEYS[2])
+    end
+    return 1
+end
+local sources = {}
+for i, member in ipairs(members) do
+    sources[i] = ARGV[1] .. member
+end
+-- 同一个业务缓存键依赖多行时，保留最高的新鲜度要求（最小的分数）
+local args = { KEYS[2], #sources }
+for _, source in ipairs(sources) do
+    args[#args + 1] = source
+end
+args[#args + 1] = 'AGGREGATE'
+args[#args + 1] = 'MIN'
+redis.call('ZUNIONSTORE', unpack(args))
+redis.call('UNLINK', unpack(sources))
+return #members
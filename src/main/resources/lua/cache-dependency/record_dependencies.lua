@@ -0,0 +1,32 @@
+-- 原子地记录缓存依赖关系
+-- KEYS[i]     : 第 i 张表的版本号 key
+-- KEYS[n + i] : 第 i 张表的过期索引 key，未开启过期依赖关系清理时不传
+-- ARGV[1]     : 业务缓存键
+-- ARGV[2]     : 业务的新鲜度
+-- ARGV[3]     : 业务缓存键所在分片的后缀，未分片时为空字符串
+-- ARGV[4]     : 业务缓存的过期时间戳（毫秒），为 0 时从过期索引中移除，为空字符串时不访问过期索引
+-- ARGV[4 + i] : 第 i 张表的依赖关系 key 前缀（拼接版本号和分片后缀后即为完整的依赖关系 key）
+-- 返回值      : 每张表记录依赖时所使用的版本号
+local businessKey = ARGV[1]
+local freshness = ARGV[2]
+local shardSuffix = ARGV[3]
+local expireAt = ARGV[4]
+local tableCount = #ARGV - 4
+local versions = {}
+for i = 1, tableCount do
+    local version = redis.call('GET', KEYS[i])
+    if not version then
+        -- 表没有版本号，则设置初始版本号为 1
+        version = '1'
+        redis.call('SET', KEYS[i], version)
+    end
+    redis.call('ZADD', ARGV[4 + i] .. version .. shardSuffix, freshness, businessKey)
+    if expireAt == '0' then
+        redis.call('ZREM', KEYS[tableCount + i], version .. ':' .. businessKey)
+    elseif expireAt ~= '' then
+        -- 过期时间只能推后，避免较短的过期时间使依赖关系被提前检查
+        redis.call('ZADD', KEYS[tableCount + i], 'GT', expireAt, version .. ':' .. businessKey)
+    end
+    versions[i] = version
+end
+return versions
@@ -0,0 +1,58 @@
+-- 原子地批量记录缓存依赖关系，每张表只解析一次版本号，同一个依赖关系 key 的业务缓存键通过多成员 ZADD 写入
+-- KEYS[i]     : 第 i 张表的版本号 key
+-- KEYS[n + i] : 第 i 张表的过期索引 key，未开启过期依赖关系清理时不传
+-- ARGV[1]     : 是否传入了过期索引 key，为 1 时传入
+-- ARGV        : 之后依次为每张表的参数：依赖关系 key 前缀、分片数量 m，之后是 m 个分片的参数：
+--               分片后缀（未分片时为空字符串）、业务缓存键数量 n，之后是 n 组新鲜度和业务缓存键；
+--               传入了过期索引 key 时，最后是业务缓存键数量 k，之后是 k 组过期时间戳（为 0 时从过期索引中移除）和业务缓存键
+-- 返回值      : 每张表记录依赖时所使用的版本号
+local BATCH_SIZE = 500
+local withExpiry = ARGV[1] == '1'
+local tableCount = withExpiry and #KEYS / 2 or #KEYS
+local index = 2
+local versions = {}
+for i = 1, tableCount do
+    local versionKey = KEYS[i]
+    local prefix = ARGV[index]
+    local shardCount = tonumber(ARGV[index + 1])
+    index = index + 2
+    local version = redis.call('GET', versionKey)
+    if not version then
+        -- 表没有版本号，则设置初始版本号为 1
+        version = '1'
+        redis.call('SET', versionKey, version)
+    end
+    for _ = 1, shardCount do
+        local dependencyKey = prefix .. version .. ARGV[index]
+        local count = tonumber(ARGV[index + 1])
+        index = index + 2
+        -- 分批写入，避免单次 unpack 的参数过多
+        for start = 0, count - 1, BATCH_SIZE do
+            local args = {}
+            for j = start, math.min(start + BATCH_SIZE, count) - 1 do
+                args[#args + 1] = ARGV[index + 2 * j]
+                args[#args + 1] = ARGV[index + 2 * j + 1]
+            end
+            redis.call('ZADD', dependencyKey, unpack(args))
+        end
+        index = index + 2 * count
+    end
+    if withExpiry then
+        local expiryKey = KEYS[tableCount + i]
+        local count = tonumber(ARGV[index])
+        index = index + 1
+        for j = 0, count - 1 do
+            local expireAt = ARGV[index + 2 * j]
+            local member = version .. ':' .. ARGV[index + 2 * j + 1]
+            if expireAt == '0' then
+                redis.call('ZREM', expiryKey, member)
+            else
+                -- 过期时间只能推后，避免较短的过期时间使依赖关系被提前检查
+                redis.call('ZADD', expiryKey, 'GT', expireAt, member)
+            end
+        end
+        index = index + 2 * count
+    end
+    versions[i] = version
+end
+return versions
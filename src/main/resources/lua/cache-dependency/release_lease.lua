@@ -0,0 +1,7 @@
+-- 释放加载租约，只有租约仍然属于当前持有者时才删除，避免删除过期后被其它节点获得的租约
+-- KEYS[1] : 租约 key
+-- ARGV[1] : 获得租约时写入的令牌
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,19 @@
+-- 移除过期的依赖关系：过期索引条目的过期时间在检查之后没有被推后（业务缓存没有被重新记录）时，
+-- 从过期索引中移除该条目，需要时同时从依赖关系中移除业务缓存键
+-- KEYS[1] : 表的过期索引 key
+-- ARGV    : 每个条目 3 个参数：过期索引成员（版本号:业务缓存键）、检查时读到的过期时间戳、
+--           依赖关系 key（为空字符串时只移除过期索引条目）
+-- 返回值  : 从依赖关系中移除的业务缓存键数量
+local removed = 0
+for i = 1, #ARGV, 3 do
+    local member = ARGV[i]
+    local score = redis.call('ZSCORE', KEYS[1], member)
+    if score and tonumber(score) <= tonumber(ARGV[i + 1]) then
+        redis.call('ZREM', KEYS[1], member)
+        if ARGV[i + 2] ~= '' then
+            local businessKey = string.sub(member, string.find(member, ':', 1, true) + 1)
+            removed = removed + redis.call('ZREM', ARGV[i + 2], businessKey)
+        end
+    end
+end
+return removed
@@ -0,0 +1,48 @@
+package top.noaharno.cachedependency.benchmark;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 基准测试使用的本地 Redis 连接
+ * <p/>
+ * 默认连接 localhost:6379 的 15 号库，可以通过 -Dbenchmark.redis.host、-Dbenchmark.redis.port、-Dbenchmark.redis.database 修改。
+ * 每次创建连接时都会清空该库，不要指向存放业务数据的库
+ */
+final class BenchmarkRedis implements AutoCloseable {
+
+    private final LettuceConnectionFactory connectionFactory;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    BenchmarkRedis() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("benchmark.redis.host", "localhost"),
+                Integer.getInteger("benchmark.redis.port", 6379));
+        configuration.setDatabase(Integer.getInteger("benchmark.redis.database", 15));
+        this.connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        this.stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        flushDb();
+    }
+
+    StringRedisTemplate getStringRedisTemplate() {
+        return stringRedisTemplate;
+    }
+
+    void flushDb() {
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        flushDb();
+        connectionFactory.destroy();
+    }
+}
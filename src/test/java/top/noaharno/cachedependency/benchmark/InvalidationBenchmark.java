@@ -0,0 +1,114 @@
+package top.noaharno.cachedependency.benchmark;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+import top.noaharno.cachedependency.constant.CacheLevelEnum;
+import top.noaharno.cachedependency.constant.DependencyStoreTypeEnum;
+import top.noaharno.cachedependency.interceptor.TableAnalysisInterceptor;
+import top.noaharno.cachedependency.service.CacheDependencyService;
+import top.noaharno.cachedependency.service.DependencyRegistration;
+import top.noaharno.cachedependency.store.InMemoryDependencyStore;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存清理的基准测试：一张表上有 10 到 100 万个秒级新鲜度的业务缓存时，一次 UPDATE 经过拦截器同步清理全部缓存的耗时
+ * <p/>
+ * 每次调用之前重新写入业务缓存并记录依赖关系，不计入耗时。拦截器在当前线程分页清理，见 {@link BenchmarkRedis}
+ * <p/>
+ * 运行方式：mvn -Pbenchmark test -Dbenchmark.include=InvalidationBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvalidationBenchmark {
+
+    private static final String TABLE = "users";
+
+    /**
+     * 写入业务缓存时每个流水线的数量
+     */
+    private static final int WRITE_BATCH_SIZE = 10000;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int fanOut;
+
+    @Param({"REDIS", "MEMORY"})
+    public DependencyStoreTypeEnum store;
+
+    private BenchmarkRedis redis;
+
+    private CacheDependencyService cacheDependencyService;
+
+    private TableAnalysisInterceptor interceptor;
+
+    private Invocation invocation;
+
+    @Setup
+    public void setup() throws Exception {
+        CacheDependencyProperties properties = new CacheDependencyProperties();
+        properties.setTables(Set.of(TABLE));
+        redis = new BenchmarkRedis();
+        cacheDependencyService = new CacheDependencyService(redis.getStringRedisTemplate(), properties, null,
+                store == DependencyStoreTypeEnum.MEMORY
+                        ? new InMemoryDependencyStore(properties.getTables(), properties.getCleanPageSize(), redis.getStringRedisTemplate()::unlink)
+                        : null);
+        interceptor = new TableAnalysisInterceptor(redis.getStringRedisTemplate(), cacheDependencyService, properties);
+
+        Configuration configuration = new Configuration();
+        MappedStatement ms = new MappedStatement.Builder(configuration, "bench.UserMapper.update",
+                new StaticSqlSource(configuration, "UPDATE users SET name = ?, age = ? WHERE id = ?"), SqlCommandType.UPDATE).build();
+        // 不执行真正的 SQL，只测量拦截器的开销
+        Executor executor = (Executor) Proxy.newProxyInstance(Executor.class.getClassLoader(), new Class<?>[]{Executor.class},
+                (proxy, method, args) -> method.getReturnType() == int.class ? 1 : null);
+        Method update = Executor.class.getMethod("update", MappedStatement.class, Object.class);
+        invocation = new Invocation(executor, update, new Object[]{ms, null});
+    }
+
+    @Setup(Level.Invocation)
+    public void populate() {
+        for (int start = 0; start < fanOut; start += WRITE_BATCH_SIZE) {
+            int end = Math.min(fanOut, start + WRITE_BATCH_SIZE);
+            int from = start;
+            redis.getStringRedisTemplate().executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (int i = from; i < end; i++) {
+                    stringConnection.set("bench:" + i, "v");
+                }
+                return null;
+            });
+            List<DependencyRegistration> registrations = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                registrations.add(DependencyRegistration.of("bench:" + i, CacheLevelEnum.SECONDS.getLevel(), TABLE));
+            }
+            cacheDependencyService.recordDependencies(registrations);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        interceptor.destroy();
+        redis.close();
+    }
+
+    @Benchmark
+    public Object invalidate() throws Throwable {
+        return interceptor.intercept(invocation);
+    }
+}
@@ -0,0 +1,74 @@
+package top.noaharno.cachedependency.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+import top.noaharno.cachedependency.constant.CacheLevelEnum;
+import top.noaharno.cachedependency.constant.DependencyStoreTypeEnum;
+import top.noaharno.cachedependency.service.CacheDependencyService;
+import top.noaharno.cachedependency.store.InMemoryDependencyStore;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录依赖关系的基准测试：一个业务缓存依赖 1 到 10 张表时 {@link CacheDependencyService#recordDependencies} 的开销，
+ * 依赖关系存储在 Redis 中时每次调用都包含一次到本地 Redis 的往返，见 {@link BenchmarkRedis}
+ * <p/>
+ * 运行方式：mvn -Pbenchmark test -Dbenchmark.include=RecordDependenciesBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordDependenciesBenchmark {
+
+    /**
+     * 业务缓存键的数量，循环使用，避免依赖关系无限增长
+     */
+    private static final int KEY_SPACE = 1 << 16;
+
+    @Param({"1", "2", "5", "10"})
+    public int tableCount;
+
+    @Param({"REDIS", "MEMORY"})
+    public DependencyStoreTypeEnum store;
+
+    private BenchmarkRedis redis;
+
+    private CacheDependencyService cacheDependencyService;
+
+    private String[] tables;
+
+    private int sequence;
+
+    @Setup
+    public void setup() {
+        tables = new String[tableCount];
+        Set<String> configuredTables = new HashSet<>();
+        for (int i = 0; i < tableCount; i++) {
+            tables[i] = "t" + i;
+            configuredTables.add(tables[i]);
+        }
+        CacheDependencyProperties properties = new CacheDependencyProperties();
+        properties.setTables(configuredTables);
+        redis = new BenchmarkRedis();
+        cacheDependencyService = new CacheDependencyService(redis.getStringRedisTemplate(), properties, null,
+                store == DependencyStoreTypeEnum.MEMORY
+                        ? new InMemoryDependencyStore(configuredTables, properties.getCleanPageSize(), redis.getStringRedisTemplate()::unlink)
+                        : null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redis.close();
+    }
+
+    @Benchmark
+    public void recordDependencies() {
+        String businessKey = "bench:" + (sequence++ & (KEY_SPACE - 1));
+        cacheDependencyService.recordDependencies(businessKey, CacheLevelEnum.SECONDS.getLevel(), tables);
+    }
+}
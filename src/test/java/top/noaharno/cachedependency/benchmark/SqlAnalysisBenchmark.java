@@ -0,0 +1,52 @@
+package top.noaharno.cachedependency.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import top.noaharno.cachedependency.util.SqlAnalysisCache;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL 表名分析的基准测试：解析缓存未命中（每次都重新解析）与命中时 {@link SqlAnalysisCache#getAnalysis} 的开销
+ * <p/>
+ * 运行方式：mvn -Pbenchmark test -Dbenchmark.include=SqlAnalysisBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlAnalysisBenchmark {
+
+    private static final String SQL_ID = "top.noaharno.cachedependency.mapper.UserMapper.update";
+
+    @Param({
+            "INSERT INTO users(name, email, age) VALUES(?, ?, ?)",
+            "UPDATE users SET name = ?, email = ?, age = ? WHERE id = ?",
+            "DELETE FROM orders WHERE user_id = ? AND status IN (?, ?, ?)",
+            "UPDATE orders o JOIN users u ON o.user_id = u.id SET o.status = ? WHERE u.email = ?",
+            "INSERT INTO order_archive(id, user_id, amount) SELECT id, user_id, amount FROM orders WHERE create_time < ?"
+    })
+    public String sql;
+
+    private final SqlAnalysisCache cache = new SqlAnalysisCache(SqlAnalysisUtil.DEFAULT_MAX_SIZE, Map.of(), Set.of());
+
+    @Setup
+    public void setup() {
+        cache.clear();
+    }
+
+    @Benchmark
+    public Set<String> cold() {
+        cache.clear();
+        return cache.getAnalysis(SQL_ID, sql).tables();
+    }
+
+    @Benchmark
+    public Set<String> warm() {
+        return cache.getAnalysis(SQL_ID, sql).tables();
+    }
+}
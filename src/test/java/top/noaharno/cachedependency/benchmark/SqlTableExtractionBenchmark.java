@@ -0,0 +1,40 @@
+package top.noaharno.cachedependency.benchmark;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.util.TablesNamesFinder;
+import org.openjdk.jmh.annotations.*;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单表 DML 表名提取的基准测试：轻量级扫描与 JSqlParser 完整解析的对比
+ * <p/>
+ * 运行方式：mvn -Pbenchmark test -Dbenchmark.include=SqlTableExtractionBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlTableExtractionBenchmark {
+
+    @Param({
+            "INSERT INTO users(name, email, age) VALUES(?, ?, ?)",
+            "UPDATE users SET name = ?, email = ?, age = ? WHERE id = ?",
+            "DELETE FROM orders WHERE user_id = ? AND status IN (?, ?, ?)"
+    })
+    public String sql;
+
+    @Benchmark
+    public Set<String> lightweightLexer() {
+        return SqlAnalysisUtil.parseTableSet(sql);
+    }
+
+    @Benchmark
+    public Set<String> jsqlParser() throws Exception {
+        return new TablesNamesFinder<>().getTables(CCJSqlParserUtil.parse(sql));
+    }
+}
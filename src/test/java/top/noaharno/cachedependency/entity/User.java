@@ -2,10 +2,11 @@ package top.noaharno.cachedependency.entity;
 
 import lombok.Data;
 
+import java.io.Serializable;
 import java.util.Objects;
 
 @Data
-public class User {
+public class User implements Serializable {
     private Long id;
     private String name;
     private String email;
@@ -1,22 +1,42 @@
 package top.noaharno.cachedependency.integration;
 
 import com.alibaba.fastjson.JSON;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.Resource;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import top.noaharno.cachedependency.TestApplication;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+import top.noaharno.cachedependency.interceptor.TableAnalysisInterceptor;
 import top.noaharno.cachedependency.entity.User;
 import top.noaharno.cachedependency.mapper.UserMapper;
+import top.noaharno.cachedependency.constant.CacheLevelEnum;
 import top.noaharno.cachedependency.service.CacheDependencyService;
+import top.noaharno.cachedependency.service.DependencyRegistration;
 import top.noaharno.cachedependency.service.UserService;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -36,11 +56,28 @@ public class CacheDependencyFunctionalTest {
     @Resource
     private UserMapper userMapper;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
     @BeforeEach
     void setup() {
         flushDb();
     }
 
+    /**
+     * 打开一个只注册了指定拦截器的 SqlSession，使用与 Spring 相同的数据源
+     */
+    private SqlSession openStandaloneSession(TableAnalysisInterceptor interceptor) {
+        org.apache.ibatis.session.Configuration configuration = new org.apache.ibatis.session.Configuration(new Environment("standalone",
+                new JdbcTransactionFactory(), sqlSessionFactory.getConfiguration().getEnvironment().getDataSource()));
+        configuration.addMapper(UserMapper.class);
+        configuration.addInterceptor(interceptor);
+        return new SqlSessionFactoryBuilder().build(configuration).openSession();
+    }
+
     public void flushDb() {
         // 清空缓存
         stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> {
@@ -79,6 +116,271 @@ public class CacheDependencyFunctionalTest {
 
     }
     
+    @Test
+    void testCacheConsistencyAnnotation() throws InterruptedException {
+        String key = "user:annotated:1";
+        User user = userService.getUserByIdWithAnnotation(1L);
+        assertNotNull(user, "此时能够查询到用户");
+        assertNotNull(stringRedisTemplate.opsForValue().get(key), "未命中时应该写入缓存");
+        assertTrue(stringRedisTemplate.getExpire(key) > 0, "缓存应该设置过期时间");
+        Set<String> dependencies = stringRedisTemplate.opsForZSet().range(cacheDependencyService.getDependencyKey("users", "1"), 0, -1);
+        assertEquals(Set.of(key), dependencies, "缓存值和依赖关系应该同时写入");
+        assertEquals(user, userService.getUserByIdWithAnnotation(1L), "第二次查询应该命中缓存");
+
+        user.setAge(user.getAge() + 1);
+        userMapper.update(user);
+        Thread.sleep(2000);
+        assertNull(stringRedisTemplate.opsForValue().get(key), "表更新后缓存应该被删除");
+        assertEquals(user, userService.getUserByIdWithAnnotation(1L), "缓存删除后应该查询到最新的数据");
+    }
+
+    @Test
+    void testMetrics() throws InterruptedException {
+        double invalidations = counter("cache.dependency.invalidations", "table", "users");
+        double hits = counter("cache.dependency.cache.requests", "business", "user:annotated", "result", "hit");
+        double deleted = counter("cache.dependency.keys.deleted", "table", "users", "level", "SECONDS");
+        User user = userService.getUserByIdWithAnnotation(1L);
+        userService.getUserByIdWithAnnotation(1L);
+        assertEquals(hits + 1, counter("cache.dependency.cache.requests", "business", "user:annotated", "result", "hit"));
+
+        userMapper.update(user);
+        Thread.sleep(2000);
+        assertEquals(invalidations + 1, counter("cache.dependency.invalidations", "table", "users"));
+        assertEquals(deleted + 1, counter("cache.dependency.keys.deleted", "table", "users", "level", "SECONDS"));
+        assertTrue(meterRegistry.get("cache.dependency.intercept").timer().count() > 0, "应该记录拦截耗时");
+        assertTrue(meterRegistry.get("cache.dependency.redis.calls").tag("operation", "version-incr").counter().count() > 0,
+                "应该记录 Redis 往返次数");
+    }
+
+    private double counter(String name, String... tags) {
+        var counter = meterRegistry.find(name).tags(tags).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void testConcurrentMissesLoadOnce() throws Exception {
+        int loadCount = userService.getSlowLoadCount();
+        List<Callable<User>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> userService.getUserByIdSlowly(1L));
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(tasks.size())) {
+            for (Future<User> future : executor.invokeAll(tasks)) {
+                assertNotNull(future.get(), "所有调用方都应该拿到结果");
+            }
+        }
+        assertEquals(loadCount + 1, userService.getSlowLoadCount(), "并发未命中时只应该回源一次");
+    }
+
+    @Test
+    void testBatchRecordDependencies() throws InterruptedException {
+        List<DependencyRegistration> registrations = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            stringRedisTemplate.opsForValue().set("page:" + i, "v");
+            registrations.add(DependencyRegistration.of("page:" + i, CacheLevelEnum.SECONDS.getLevel(), "users", "orders"));
+        }
+        cacheDependencyService.recordDependencies(registrations);
+        assertEquals(1200L, stringRedisTemplate.opsForZSet().size(cacheDependencyService.getDependencyKey("users", "1")));
+        assertEquals(1200L, stringRedisTemplate.opsForZSet().size(cacheDependencyService.getDependencyKey("orders", "1")));
+
+        User user = userMapper.selectById(1L);
+        userMapper.update(user);
+        Thread.sleep(2000);
+        assertNull(stringRedisTemplate.opsForValue().get("page:0"), "表更新后批量记录的缓存应该被删除");
+        assertNull(stringRedisTemplate.opsForValue().get("page:1199"), "表更新后批量记录的缓存应该被删除");
+    }
+
+    @Test
+    void testExpiredDependenciesAreSwept() throws InterruptedException {
+        CacheDependencyProperties properties = new CacheDependencyProperties();
+        properties.setTables(Set.of("users", "orders"));
+        properties.getExpirySweep().setEnabled(true);
+        properties.getExpirySweep().setInterval(Duration.ofMillis(100));
+        properties.getExpirySweep().setGrace(Duration.ZERO);
+        CacheDependencyService service = new CacheDependencyService(stringRedisTemplate, properties);
+        TableAnalysisInterceptor interceptor = new TableAnalysisInterceptor(stringRedisTemplate, service, properties);
+        try {
+            Duration ttl = Duration.ofMillis(300);
+            service.cacheAndRecordDependencies("expiring:1", "v".getBytes(), ttl, CacheLevelEnum.SECONDS.getLevel(), "users");
+            stringRedisTemplate.opsForValue().set("expiring:2", "v", ttl);
+            service.recordDependencies(List.of(DependencyRegistration.of("expiring:2", ttl, CacheLevelEnum.SECONDS.getLevel(), "users", "orders")));
+            // 重新写入时没有重新记录依赖关系，到期检查时按照剩余的过期时间重新排序
+            stringRedisTemplate.opsForValue().set("renewed", "v", ttl);
+            service.recordDependencies("renewed", ttl, CacheLevelEnum.SECONDS.getLevel(), "users");
+            stringRedisTemplate.opsForValue().set("renewed", "v", Duration.ofMinutes(1));
+            service.recordDependencies("persistent", CacheLevelEnum.SECONDS.getLevel(), "users");
+            assertEquals(3L, stringRedisTemplate.opsForZSet().size(service.getExpiryIndexKey("users")));
+
+            Thread.sleep(1500);
+            assertEquals(Set.of("renewed", "persistent"),
+                    stringRedisTemplate.opsForZSet().range(service.getDependencyKey("users", "1"), 0, -1),
+                    "过期的业务缓存应该从依赖关系中移除");
+            assertEquals(0L, stringRedisTemplate.opsForZSet().size(service.getDependencyKey("orders", "1")));
+            assertEquals(Set.of(service.getExpiryIndexMember("1", "renewed")),
+                    stringRedisTemplate.opsForZSet().range(service.getExpiryIndexKey("users"), 0, -1));
+            assertEquals(3, interceptor.getExpiredDependencyCount());
+        } finally {
+            interceptor.destroy();
+        }
+    }
+
+    @Test
+    void testSupersededExpiryEntriesAreDropped() throws InterruptedException {
+        CacheDependencyProperties properties = new CacheDependencyProperties();
+        properties.setTables(Set.of("users"));
+        properties.getExpirySweep().setEnabled(true);
+        properties.getExpirySweep().setInterval(Duration.ofMillis(100));
+        properties.getExpirySweep().setGrace(Duration.ZERO);
+        CacheDependencyService service = new CacheDependencyService(stringRedisTemplate, properties);
+        TableAnalysisInterceptor interceptor = new TableAnalysisInterceptor(stringRedisTemplate, service, properties);
+        try {
+            // 业务缓存在旧版本下记录，之后被重新写入并延长了过期时间，但没有在新版本下重新记录依赖关系
+            stringRedisTemplate.opsForValue().set("superseded", "v");
+            service.recordDependencies("superseded", Duration.ofMillis(200), CacheLevelEnum.SECONDS.getLevel(), "users");
+            stringRedisTemplate.expire("superseded", Duration.ofMinutes(1));
+            stringRedisTemplate.opsForValue().increment(service.getVersionKey("users"));
+
+            Thread.sleep(1000);
+            assertEquals(0L, stringRedisTemplate.opsForZSet().size(service.getExpiryIndexKey("users")),
+                    "旧版本的过期索引条目应该直接移除，不再重新排序");
+            assertEquals(0, interceptor.getExpiredDependencyCount());
+        } finally {
+            interceptor.destroy();
+        }
+    }
+
+    @Test
+    void testShardedDependencyKeys() {
+        CacheDependencyProperties properties = new CacheDependencyProperties();
+        properties.setTables(Set.of("users"));
+        properties.setDependencyShards(4);
+        CacheDependencyService service = new CacheDependencyService(stringRedisTemplate, properties);
+        String dependencyKey = service.getDependencyKey("users", "1");
+        for (String businessKey : List.of("user:1", "user:2", "user:list", "")) {
+            assertEquals(dependencyKey + ":s" + Math.floorMod(businessKey.hashCode(), 4), service.getDependencyKey("users", "1", businessKey),
+                    "业务缓存键应该按照哈希值分配分片");
+        }
+        assertEquals(List.of(dependencyKey, dependencyKey + ":s0", dependencyKey + ":s1", dependencyKey + ":s2", dependencyKey + ":s3"),
+                service.getDependencyKeys("users", "1"), "清理时应该包含不带分片后缀的键");
+
+        service.recordDependencies("user:1", CacheLevelEnum.SECONDS.getLevel(), "users");
+        for (String key : service.getDependencyKeys("users", "1")) {
+            Long size = stringRedisTemplate.opsForZSet().size(key);
+            assertEquals(key.equals(service.getDependencyKey("users", "1", "user:1")) ? 1L : 0L, size,
+                    "依赖关系应该只记录在业务缓存键所在的分片中：" + key);
+        }
+    }
+
+    @Test
+    void testShardedCleanupDrainsAllShardsBeforeWriteReturns() {
+        CacheDependencyProperties properties = new CacheDependencyProperties();
+        properties.setTables(Set.of("users"));
+        properties.setDependencyShards(4);
+        CacheDependencyService service = new CacheDependencyService(stringRedisTemplate, properties);
+        TableAnalysisInterceptor interceptor = new TableAnalysisInterceptor(stringRedisTemplate, service, properties);
+        try (SqlSession session = openStandaloneSession(interceptor)) {
+            List<String> businessKeys = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                businessKeys.add("sharded:" + i);
+                stringRedisTemplate.opsForValue().set("sharded:" + i, "v");
+                service.recordDependencies("sharded:" + i, CacheLevelEnum.SECONDS.getLevel(), "users");
+            }
+            // 开启分片之前记录在不带分片后缀的键中的依赖关系，数量远多于分片，在线程池中清理的时间明显更长
+            String legacyDependencyKey = service.getDependencyKey("users", "1");
+            List<String> legacyKeys = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                legacyKeys.add("legacy:" + i);
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (String legacyKey : legacyKeys) {
+                    stringConnection.set(legacyKey, "v");
+                    stringConnection.zAdd(legacyDependencyKey, CacheLevelEnum.SECONDS.getLevel(), legacyKey);
+                }
+                return null;
+            });
+            businessKeys.addAll(legacyKeys);
+            assertEquals(4, service.getDependencyKeys("users", "1").stream()
+                    .filter(key -> Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))).count() - 1, "业务缓存键应该分布在所有分片中");
+
+            UserMapper mapper = session.getMapper(UserMapper.class);
+            User user = mapper.selectById(1L);
+            user.setAge(user.getAge() + 1);
+            mapper.update(user);
+            session.commit();
+
+            // 不等待：写操作返回时所有分片和旧的键都应该已经清理完成
+            assertEquals(0L, stringRedisTemplate.countExistingKeys(businessKeys));
+            for (String key : service.getDependencyKeys("users", "1")) {
+                assertFalse(stringRedisTemplate.hasKey(key), "清理完成后应该释放依赖关系键：" + key);
+            }
+        } finally {
+            interceptor.destroy();
+        }
+    }
+
+    @Test
+    void testRowDependenciesOnlyInvalidateChangedRows() throws InterruptedException {
+        CacheDependencyProperties properties = new CacheDependencyProperties();
+        properties.setTables(Set.of("users"));
+        properties.setRowKeyColumns(Map.of("users", "id"));
+        CacheDependencyService service = new CacheDependencyService(stringRedisTemplate, properties);
+        TableAnalysisInterceptor interceptor = new TableAnalysisInterceptor(stringRedisTemplate, service, properties);
+        try (SqlSession session = openStandaloneSession(interceptor)) {
+            for (long id = 1; id <= 2; id++) {
+                stringRedisTemplate.opsForValue().set("row:user:" + id, "v");
+                service.recordRowDependencies("row:user:" + id, CacheLevelEnum.SECONDS.getLevel(), "users", id);
+            }
+            stringRedisTemplate.opsForValue().set("row:user:1:orders", "v");
+            service.recordRowDependencies("row:user:1:orders", CacheLevelEnum.MINUTES.getLevel(), "users", 1L);
+
+            UserMapper mapper = session.getMapper(UserMapper.class);
+            User user = mapper.selectById(1L);
+            user.setAge(user.getAge() + 1);
+            mapper.update(user);
+            session.commit();
+
+            assertNull(stringRedisTemplate.opsForValue().get("row:user:1"), "被修改的行的缓存应该被清理");
+            assertNotNull(stringRedisTemplate.opsForValue().get("row:user:2"), "未被修改的行的缓存应该保留");
+            assertEquals(Set.of("2"), stringRedisTemplate.opsForSet().members(service.getRowIndexKey("users")));
+            assertFalse(stringRedisTemplate.hasKey(service.getRowDependencyKey("users", "1")));
+            // 较低的新鲜度级别按照截止时间延迟清理
+            for (int i = 0; i < 100 && stringRedisTemplate.hasKey("row:user:1:orders"); i++) {
+                Thread.sleep(500);
+            }
+            assertNull(stringRedisTemplate.opsForValue().get("row:user:1:orders"));
+            assertEquals(1, interceptor.getDeletedKeyCount(CacheLevelEnum.MINUTES));
+            assertEquals(Set.of("row:user:2"),
+                    stringRedisTemplate.opsForZSet().range(service.getRowDependencyKey("users", "2"), 0, -1));
+            Thread.sleep(200);
+            assertEquals(Set.of(), stringRedisTemplate.keys(properties.getDependencyKeyPrefix() + "users:detached:*"),
+                    "清理完成后应该释放快照");
+        } finally {
+            interceptor.destroy();
+        }
+    }
+
+    @Test
+    void testBatchExecutorInvalidatesOncePerFlush() {
+        String versionKey = cacheDependencyService.getVersionKey("users");
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            UserMapper batchMapper = session.getMapper(UserMapper.class);
+            User user = batchMapper.selectById(1L);
+            for (int i = 0; i < 100; i++) {
+                user.setAge(user.getAge() + 1);
+                batchMapper.update(user);
+            }
+            assertNull(stringRedisTemplate.opsForValue().get(versionKey), "攒批期间不应该清理缓存");
+            session.flushStatements();
+            assertEquals("1", stringRedisTemplate.opsForValue().get(versionKey), "一个批次只应该自增一次版本号");
+
+            batchMapper.update(user);
+            batchMapper.update(user);
+            session.commit();
+            assertEquals("2", stringRedisTemplate.opsForValue().get(versionKey), "提交时应该清理一次");
+        }
+    }
+
     @Test
     void testMultipleTableOperations() throws InterruptedException {
 
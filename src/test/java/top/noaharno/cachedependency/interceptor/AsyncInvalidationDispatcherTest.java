@@ -0,0 +1,218 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import top.noaharno.cachedependency.constant.BackpressureStrategyEnum;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 异步缓存清理调度器的背压测试
+ * <p/>
+ * 清理直接在调度线程上执行，第一次清理阻塞住调度线程，使容量为 1 的队列可以被确定地填满；
+ * 使用默认的虚拟线程执行清理时，由同时执行的批次数量的上限保证队列被填满
+ */
+public class AsyncInvalidationDispatcherTest {
+
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AtomicBoolean first = new AtomicBoolean(true);
+
+    /**
+     * 每次清理的线程名 -> 清理的变化
+     */
+    private final List<Map.Entry<String, Collection<TableChange>>> invalidations = new CopyOnWriteArrayList<>();
+
+    private AsyncInvalidationDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    void callerRunsInvalidatesOnWriterThreadWhenFull() throws Exception {
+        stallWith(BackpressureStrategyEnum.CALLER_RUNS);
+        dispatcher.submit(List.of(TableChange.wholeTable("users")));
+        assertEquals(1, dispatcher.getQueueDepth());
+
+        dispatcher.submit(List.of(TableChange.wholeTable("orders")));
+        assertEquals(1, dispatcher.getQueueDepth(), "队列已满时不应该入队");
+        assertEquals(2, invalidations.size());
+        assertEquals(Thread.currentThread().getName(), invalidations.get(1).getKey(), "应该在写线程上同步清理");
+        assertEquals(List.of("orders"), tables(invalidations.get(1).getValue()));
+
+        release.countDown();
+        dispatcher.close();
+        assertEquals(List.of("users"), tables(invalidations.get(2).getValue()));
+    }
+
+    @Test
+    void coalesceMergesOverflowPerTable() throws Exception {
+        stallWith(BackpressureStrategyEnum.COALESCE);
+        dispatcher.submit(List.of(TableChange.wholeTable("users")));
+        dispatcher.submit(List.of(TableChange.of("orders", Set.of("1"), Set.of("price"))));
+        dispatcher.submit(List.of(TableChange.of("orders", Set.of("2"), Set.of("status"))));
+        assertEquals(2, dispatcher.getQueueDepth(), "溢出的变化应该按表合并");
+        assertEquals(1, invalidations.size(), "COALESCE 策略不应该在写线程上清理");
+
+        release.countDown();
+        dispatcher.close();
+        assertEquals(2, invalidations.size(), "溢出的变化应该与队列中的变化在同一批次中清理");
+        Collection<TableChange> batch = invalidations.get(1).getValue();
+        assertEquals(List.of("users", "orders"), tables(batch));
+        TableChange orders = batch.stream().filter(change -> change.table().equals("orders")).findFirst().orElseThrow();
+        assertEquals(Set.of("1", "2"), orders.rowKeys());
+        assertEquals(Set.of("price", "status"), orders.columns());
+    }
+
+    @Test
+    void blockWaitsUntilQueueHasRoom() throws Exception {
+        stallWith(BackpressureStrategyEnum.BLOCK);
+        dispatcher.submit(List.of(TableChange.wholeTable("users")));
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> dispatcher.submit(List.of(TableChange.wholeTable("orders"))));
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS), "队列已满时写线程应该等待");
+        assertEquals(1, invalidations.size());
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        dispatcher.close();
+        List<String> invalidated = new ArrayList<>();
+        invalidations.forEach(invalidation -> invalidated.addAll(tables(invalidation.getValue())));
+        assertEquals(List.of("stall", "users", "orders"), invalidated);
+    }
+
+    @Test
+    void queueDepthNeverExceedsCapacity() throws Exception {
+        int capacity = 8;
+        int writers = 32;
+        stallWith(BackpressureStrategyEnum.CALLER_RUNS, capacity);
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                String table = "table_" + i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    dispatcher.submit(List.of(TableChange.wholeTable(table)));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertEquals(capacity, dispatcher.getQueueDepth());
+        assertEquals(1 + writers - capacity, invalidations.size(), "超出容量的变化应该由写线程清理");
+
+        release.countDown();
+        dispatcher.close();
+        Set<String> invalidated = ConcurrentHashMap.newKeySet();
+        invalidations.forEach(invalidation -> invalidated.addAll(tables(invalidation.getValue())));
+        assertEquals(writers + 1, invalidated.size(), "每张表都应该被清理");
+    }
+
+    @Test
+    void defaultExecutorKeepsBacklogInQueue() throws Exception {
+        dispatcher = new AsyncInvalidationDispatcher(1, 100, 1, BackpressureStrategyEnum.CALLER_RUNS, this::invalidate);
+        dispatcher.submit(List.of(TableChange.wholeTable("stall")));
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+        assertNotEquals(Thread.currentThread().getName(), invalidations.get(0).getKey(), "第一次清理应该在虚拟线程上执行");
+
+        dispatcher.submit(List.of(TableChange.wholeTable("users")));
+        Thread.sleep(50);
+        assertEquals(1, dispatcher.getQueueDepth(), "正在执行的批次达到上限时变化应该留在队列中");
+        dispatcher.submit(List.of(TableChange.wholeTable("orders")));
+        assertEquals(2, invalidations.size());
+        assertEquals(Thread.currentThread().getName(), invalidations.get(1).getKey(), "队列已满时应该在写线程上同步清理");
+
+        release.countDown();
+        dispatcher.close();
+        assertEquals(List.of("users"), tables(invalidations.get(2).getValue()));
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void defaultExecutorBoundsConcurrentBatches() throws Exception {
+        int maxConcurrency = 3;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch saturated = new CountDownLatch(maxConcurrency);
+        dispatcher = new AsyncInvalidationDispatcher(1000, 1, maxConcurrency, BackpressureStrategyEnum.BLOCK, changes -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            saturated.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            dispatcher.submit(List.of(TableChange.wholeTable("table_" + i)));
+        }
+        assertTrue(saturated.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(maxConcurrency, running.get());
+        assertEquals(20 - maxConcurrency, dispatcher.getQueueDepth(), "队列深度应该反映尚未开始清理的积压");
+
+        release.countDown();
+        dispatcher.close();
+        assertEquals(maxConcurrency, peak.get());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    private void stallWith(BackpressureStrategyEnum backpressure) throws InterruptedException {
+        stallWith(backpressure, 1);
+    }
+
+    /**
+     * 创建调度器并提交一次会阻塞调度线程的清理，返回时调度线程已经阻塞、队列为空
+     */
+    private void stallWith(BackpressureStrategyEnum backpressure, int capacity) throws InterruptedException {
+        dispatcher = new AsyncInvalidationDispatcher(capacity, 100, 1, backpressure, this::invalidate, Runnable::run);
+        dispatcher.submit(List.of(TableChange.wholeTable("stall")));
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    private void invalidate(Collection<TableChange> changes) {
+        invalidations.add(Map.entry(Thread.currentThread().getName(), List.copyOf(changes)));
+        if (first.compareAndSet(true, false)) {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static List<String> tables(Collection<TableChange> changes) {
+        return changes.stream().map(TableChange::table).toList();
+    }
+}
@@ -0,0 +1,31 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 表上变化合并的测试
+ */
+public class TableChangeTest {
+
+    @Test
+    void mergeUnionsColumns() {
+        TableChange merged = TableChange.of("users", Set.of("1"), Set.of("name"))
+                .merge(TableChange.of("users", Set.of("2"), Set.of("email", "name")));
+        assertEquals(Set.of("name", "email"), merged.columns());
+        assertEquals(Set.of("1", "2"), merged.rowKeys());
+    }
+
+    @Test
+    void mergeWithAllColumnsAffectsAllColumns() {
+        TableChange columns = TableChange.of("users", Set.of("1"), Set.of("name"));
+        TableChange allColumns = TableChange.of("users", Set.of("1"), null);
+        assertTrue(columns.merge(allColumns).isAllColumns());
+        assertTrue(allColumns.merge(columns).isAllColumns());
+        assertFalse(columns.merge(allColumns).isAllRows(), "行和列应该分别合并");
+        assertTrue(TableChange.wholeTable("users").merge(columns).isAllColumns());
+    }
+}
@@ -0,0 +1,96 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 事务感知的缓存失效收集器的测试，使用 H2 内存数据库上的真实事务
+ */
+public class TransactionalInvalidationCollectorTest {
+
+    private final List<List<TableChange>> invalidations = new CopyOnWriteArrayList<>();
+
+    private final TransactionalInvalidationCollector collector = new TransactionalInvalidationCollector(
+            changes -> invalidations.add(List.copyOf(changes)));
+
+    private final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(
+            new DriverManagerDataSource("jdbc:h2:mem:collector;DB_CLOSE_DELAY=-1"));
+
+    private final TransactionTemplate required = new TransactionTemplate(transactionManager);
+
+    private final TransactionTemplate requiresNew = new TransactionTemplate(transactionManager,
+            new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+
+    @Test
+    void outsideTransactionIsNotCollected() {
+        assertFalse(collector.collect(List.of(TableChange.wholeTable("users"))), "没有事务时应该由调用方立即清理");
+        assertTrue(invalidations.isEmpty());
+    }
+
+    @Test
+    void commitInvalidatesOnceWithMergedChanges() {
+        required.executeWithoutResult(status -> {
+            assertTrue(collector.collect(List.of(TableChange.of("users", Set.of("1"), Set.of("name")))));
+            assertTrue(collector.collect(List.of(TableChange.of("users", Set.of("2"), Set.of("email")),
+                    TableChange.wholeTable("orders"))));
+            assertTrue(invalidations.isEmpty(), "提交之前不应该清理");
+        });
+        assertEquals(1, invalidations.size(), "提交后只应该清理一次");
+        List<TableChange> changes = invalidations.get(0);
+        assertEquals(List.of("users", "orders"), tables(changes));
+        assertEquals(Set.of("1", "2"), changes.get(0).rowKeys());
+        assertEquals(Set.of("name", "email"), changes.get(0).columns());
+        assertTrue(changes.get(1).isAllRows());
+    }
+
+    @Test
+    void rollbackSkipsInvalidation() {
+        required.executeWithoutResult(status -> {
+            collector.collect(List.of(TableChange.wholeTable("users")));
+            status.setRollbackOnly();
+        });
+        assertTrue(invalidations.isEmpty(), "回滚时不应该清理");
+
+        // 回滚之后新的事务重新收集
+        required.executeWithoutResult(status -> collector.collect(List.of(TableChange.wholeTable("orders"))));
+        assertEquals(List.of(List.of("orders")), invalidations.stream().map(TransactionalInvalidationCollectorTest::tables).toList());
+    }
+
+    @Test
+    void requiresNewCollectsSeparatelyFromSuspendedTransaction() {
+        required.executeWithoutResult(outer -> {
+            collector.collect(List.of(TableChange.wholeTable("users")));
+
+            requiresNew.executeWithoutResult(inner -> collector.collect(List.of(TableChange.wholeTable("orders"))));
+            assertEquals(1, invalidations.size(), "内层事务提交后应该只清理内层事务的变化");
+            assertEquals(List.of("orders"), tables(invalidations.get(0)));
+
+            requiresNew.executeWithoutResult(inner -> {
+                collector.collect(List.of(TableChange.wholeTable("products")));
+                inner.setRollbackOnly();
+            });
+            assertEquals(1, invalidations.size(), "内层事务回滚时不应该清理");
+
+            // 恢复外层事务后继续收集到外层事务中
+            collector.collect(List.of(TableChange.of("users", Set.of("1"), null), TableChange.wholeTable("stock")));
+        });
+        assertEquals(2, invalidations.size());
+        assertEquals(List.of("users", "stock"), tables(invalidations.get(1)));
+        assertTrue(invalidations.get(1).get(0).isAllRows());
+    }
+
+    private static List<String> tables(Collection<TableChange> changes) {
+        return changes.stream().map(TableChange::table).toList();
+    }
+}
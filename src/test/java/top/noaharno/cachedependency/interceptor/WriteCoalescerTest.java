@@ -0,0 +1,100 @@
+package top.noaharno.cachedependency.interceptor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 写操作合并的测试
+ */
+public class WriteCoalescerTest {
+
+    private final BlockingQueue<Collection<TableChange>> invalidations = new LinkedBlockingQueue<>();
+
+    private final CacheDependencyProperties.Coalesce coalesce = new CacheDependencyProperties.Coalesce();
+
+    private WriteCoalescer coalescer;
+
+    @AfterEach
+    void tearDown() {
+        if (coalescer != null) {
+            coalescer.close();
+        }
+    }
+
+    @Test
+    void mergesChangesWithinWindow() throws Exception {
+        coalesce.setWindow(Duration.ofMillis(200));
+        coalescer = new WriteCoalescer(coalesce::getWindow, invalidations::add);
+        assertTrue(coalescer.offer(List.of(TableChange.of("users", Set.of("1"), Set.of("name")))).isEmpty());
+        assertTrue(coalescer.offer(List.of(TableChange.of("users", Set.of("2"), Set.of("email")),
+                TableChange.wholeTable("orders"))).isEmpty());
+        assertEquals(2, coalescer.getOpenWindowCount());
+        assertNull(invalidations.poll(50, TimeUnit.MILLISECONDS), "窗口结束之前不应该清理");
+
+        TableChange first = single(invalidations.poll(5, TimeUnit.SECONDS));
+        TableChange second = single(invalidations.poll(5, TimeUnit.SECONDS));
+        TableChange users = first.table().equals("users") ? first : second;
+        assertEquals(Set.of("1", "2"), users.rowKeys());
+        assertEquals(Set.of("name", "email"), users.columns());
+        assertEquals("orders", (users == first ? second : first).table());
+        assertEquals(0, coalescer.getOpenWindowCount());
+        assertNull(invalidations.poll(300, TimeUnit.MILLISECONDS), "每个窗口只应该清理一次");
+    }
+
+    @Test
+    void tableWindowsOverrideDefaultWindow() throws Exception {
+        coalesce.setTableWindows(Map.of("orders", Duration.ofMillis(100)));
+        coalescer = new WriteCoalescer(coalesce::getWindow, invalidations::add);
+        Collection<TableChange> uncoalesced = coalescer.offer(List.of(TableChange.wholeTable("users"), TableChange.wholeTable("orders")));
+        assertEquals(List.of("users"), uncoalesced.stream().map(TableChange::table).toList(), "没有配置合并窗口的表应该立即清理");
+        assertEquals(1, coalescer.getOpenWindowCount());
+        assertEquals("orders", single(invalidations.poll(5, TimeUnit.SECONDS)).table());
+    }
+
+    @Test
+    void writesAfterFlushOpenNewWindow() throws Exception {
+        coalesce.setWindow(Duration.ofMillis(100));
+        coalescer = new WriteCoalescer(coalesce::getWindow, invalidations::add);
+        coalescer.offer(List.of(TableChange.of("users", Set.of("1"), null)));
+        assertEquals(Set.of("1"), single(invalidations.poll(5, TimeUnit.SECONDS)).rowKeys());
+
+        // 窗口结束后的写操作打开新的窗口，在新窗口的结束时清理
+        coalescer.offer(List.of(TableChange.of("users", Set.of("2"), null)));
+        assertEquals(1, coalescer.getOpenWindowCount());
+        assertEquals(Set.of("2"), single(invalidations.poll(5, TimeUnit.SECONDS)).rowKeys());
+        assertEquals(0, coalescer.getOpenWindowCount());
+    }
+
+    @Test
+    void closeFlushesOpenWindows() {
+        coalesce.setWindow(Duration.ofHours(1));
+        coalescer = new WriteCoalescer(coalesce::getWindow, invalidations::add);
+        coalescer.offer(List.of(TableChange.wholeTable("users"), TableChange.wholeTable("orders")));
+        assertEquals(2, coalescer.getOpenWindowCount());
+
+        coalescer.close();
+        assertEquals(0, coalescer.getOpenWindowCount());
+        assertEquals(2, invalidations.size(), "关闭时应该立即清理所有打开的窗口");
+        assertEquals(List.of("users"), coalescer.offer(List.of(TableChange.wholeTable("users"))).stream().map(TableChange::table).toList(),
+                "关闭之后的变化应该立即清理");
+        assertEquals(0, coalescer.getOpenWindowCount());
+    }
+
+    private static TableChange single(Collection<TableChange> changes) {
+        assertNotNull(changes, "窗口结束时应该清理");
+        assertEquals(1, changes.size());
+        return changes.iterator().next();
+    }
+}
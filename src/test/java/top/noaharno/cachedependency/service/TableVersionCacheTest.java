@@ -0,0 +1,68 @@
+package top.noaharno.cachedependency.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 表版本号本地缓存的乱序更新测试
+ */
+public class TableVersionCacheTest {
+
+    @Test
+    void outOfOrderUpdatesNeverRegress() {
+        TableVersionCache cache = subscribedCache(Duration.ofMinutes(1));
+        cache.observe("users", 1);
+        assertEquals("1", cache.get("users"));
+
+        // 自增到 2 的广播先于读到 1 的脚本结果到达
+        cache.update("users", 2);
+        cache.observe("users", 1);
+        assertEquals("2", cache.get("users"), "脚本结果不应该回退本地版本号");
+
+        cache.update("users", 3);
+        cache.update("users", 2);
+        assertEquals("3", cache.get("users"), "乱序到达的旧广播应该被忽略");
+        cache.observe("users", 4);
+        assertEquals("4", cache.get("users"));
+
+        // 版本号 key 被删除后重新初始化，只有版本号变更才会回退到 1
+        cache.update("users", 1);
+        assertEquals("1", cache.get("users"));
+    }
+
+    @Test
+    void observedVersionsDoNotExtendMaxAge() throws Exception {
+        TableVersionCache cache = subscribedCache(Duration.ofMillis(300));
+        cache.update("users", 2);
+        Thread.sleep(200);
+        cache.observe("users", 2);
+        cache.observe("users", 1);
+        Thread.sleep(200);
+        assertNull(cache.get("users"), "相同或者旧的版本号不应该延长本地副本的有效期");
+
+        // 过期之后重新从脚本结果填充
+        cache.observe("users", 2);
+        assertEquals("2", cache.get("users"));
+    }
+
+    @Test
+    void unsubscribedCacheIsUnavailable() {
+        TableVersionCache cache = subscribedCache(Duration.ofMinutes(1));
+        cache.update("users", 2);
+        cache.onChannelUnsubscribed(new byte[0], 0);
+        assertFalse(cache.isAvailable());
+        assertNull(cache.get("users"));
+
+        cache.onChannelSubscribed(new byte[0], 1);
+        assertNull(cache.get("users"), "订阅断开期间的本地副本应该被清空");
+    }
+
+    private static TableVersionCache subscribedCache(Duration maxAge) {
+        TableVersionCache cache = new TableVersionCache(maxAge);
+        cache.onChannelSubscribed(new byte[0], 1);
+        return cache;
+    }
+}
@@ -5,10 +5,14 @@ import jakarta.annotation.Resource;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import top.noaharno.cachedependency.annotation.CacheConsistency;
 import top.noaharno.cachedependency.constant.CacheLevelEnum;
 import top.noaharno.cachedependency.entity.User;
 import top.noaharno.cachedependency.mapper.UserMapper;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author NoahArno
  * @version 1.0.0
@@ -37,4 +41,25 @@ public class UserService {
             return JSON.parseObject(string, User.class);
         }
     }
+
+    /**
+     * 回源次数，用于验证并发未命中时只回源一次
+     */
+    private final AtomicInteger slowLoadCount = new AtomicInteger();
+
+    @CacheConsistency(businessName = "user:slow", key = "#p0", tables = "users")
+    public User getUserByIdSlowly(Long id) throws InterruptedException {
+        slowLoadCount.incrementAndGet();
+        Thread.sleep(200);
+        return userMapper.selectById(id);
+    }
+
+    public int getSlowLoadCount() {
+        return slowLoadCount.get();
+    }
+
+    @CacheConsistency(businessName = "user:annotated", key = "#p0", tables = "users", expire = 10, timeUnit = TimeUnit.MINUTES)
+    public User getUserByIdWithAnnotation(Long id) {
+        return userMapper.selectById(id);
+    }
 }
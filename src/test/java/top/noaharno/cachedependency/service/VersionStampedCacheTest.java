@@ -0,0 +1,172 @@
+package top.noaharno.cachedependency.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import top.noaharno.cachedependency.config.CacheDependencyProperties;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 带版本戳的业务缓存的测试，Redis 由内存中的 Map 模拟
+ */
+public class VersionStampedCacheTest {
+
+    private static final byte[] DATA = "data".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, byte[]> redis = new HashMap<>();
+
+    /**
+     * 命令名 -> 调用次数
+     */
+    private final Map<String, Integer> commandCounts = new HashMap<>();
+
+    private final CacheDependencyProperties properties = new CacheDependencyProperties();
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private CacheDependencyService cacheDependencyService;
+
+    @BeforeEach
+    void setUp() {
+        properties.setTables(Set.of("users", "orders"));
+        RedisStringCommands stringCommands = proxy(RedisStringCommands.class, (method, args) -> {
+            commandCounts.merge(method.getName(), 1, Integer::sum);
+            return switch (method.getName()) {
+                case "get" -> redis.get(toKey((byte[]) args[0]));
+                case "mGet" -> Arrays.stream((byte[][]) args[0]).map(key -> redis.get(toKey(key))).toList();
+                case "set" -> {
+                    redis.put(toKey((byte[]) args[0]), (byte[]) args[1]);
+                    yield true;
+                }
+                default -> throw new UnsupportedOperationException(method.getName());
+            };
+        });
+        RedisConnection connection = proxy(RedisConnection.class, (method, args) -> {
+            if (method.getName().equals("stringCommands")) {
+                return stringCommands;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        stringRedisTemplate = new StringRedisTemplate() {
+            @Override
+            public <T> T execute(RedisCallback<T> action) {
+                return action.doInRedis(connection);
+            }
+
+            @Override
+            public List<Object> executePipelined(RedisCallback<?> action) {
+                action.doInRedis(connection);
+                return List.of();
+            }
+        };
+        cacheDependencyService = new CacheDependencyService(stringRedisTemplate, properties);
+    }
+
+    @Test
+    void wrappedValuesRoundTrip() {
+        VersionStampedCache cache = newCache(null);
+        cache.put("user:1", DATA, new long[]{3, 7}, Duration.ofMinutes(1), null);
+
+        byte[] raw = redis.get("user:1");
+        assertEquals('V', raw[0]);
+        assertEquals(2, raw[1]);
+        assertEquals(2 + 2 * Long.BYTES + DATA.length, raw.length);
+        assertArrayEquals(DATA, cache.getIfCurrent("user:1", new long[]{3, 7}));
+        assertNull(cache.getIfCurrent("user:2", new long[]{3, 7}));
+    }
+
+    @Test
+    void tableCountMismatchIsMiss() {
+        VersionStampedCache cache = newCache(null);
+        cache.put("user:1", DATA, new long[]{3}, null, null);
+        assertNull(cache.getIfCurrent("user:1", new long[]{3, 0}));
+        assertNull(cache.getIfCurrent("user:1", new long[0]));
+
+        redis.put("user:2", DATA);
+        assertNull(cache.getIfCurrent("user:2", new long[0]), "没有版本戳的缓存值应该视为未命中");
+    }
+
+    @Test
+    void versionMismatchIsMiss() {
+        VersionStampedCache cache = newCache(null);
+        redis.put(cacheDependencyService.getVersionKey("users"), "4".getBytes(StandardCharsets.UTF_8));
+        cache.put("user:1", DATA, new long[]{3, 0}, null, null);
+
+        VersionStampedCache.Lookup lookup = cache.lookup("user:1", "users", "orders");
+        assertNull(lookup.value());
+        assertArrayEquals(new long[]{4, 0}, lookup.versions(), "没有版本号的表视为 0");
+
+        cache.put("user:1", DATA, lookup.versions(), null, null);
+        assertArrayEquals(DATA, cache.lookup("user:1", "users", "orders").value());
+        assertNull(cache.lookup("user:1", "orders", "users").value(), "表的顺序不同时版本号不一致");
+    }
+
+    @Test
+    void staleCopyIgnoresVersionsButChecksHeader() {
+        VersionStampedCache cache = newCache(null);
+        cache.put("user:1", DATA, new long[]{3, 7}, null, Duration.ofMinutes(5));
+        assertArrayEquals(DATA, cache.getStale("user:1"));
+        assertNull(cache.getStale("user:2"));
+
+        String staleKey = cacheDependencyService.getStaleKey("user:3");
+        redis.put(staleKey, new byte[]{'V', 5, 0, 0});
+        assertNull(cache.getStale("user:3"), "表数量超过实际长度时视为不存在");
+        redis.put(staleKey, new byte[]{'X', 0, 1});
+        assertNull(cache.getStale("user:3"), "格式标识不正确时视为不存在");
+        redis.put(staleKey, new byte[]{'V', 0, 1});
+        assertArrayEquals(new byte[]{1}, cache.getStale("user:3"));
+    }
+
+    @Test
+    void lookupFallsBackToMgetWithoutLocalVersions() {
+        TableVersionCache tableVersionCache = new TableVersionCache(Duration.ofMinutes(1));
+        VersionStampedCache cache = newCache(tableVersionCache);
+        redis.put(cacheDependencyService.getVersionKey("users"), "2".getBytes(StandardCharsets.UTF_8));
+        cache.put("user:1", DATA, new long[]{2}, null, null);
+
+        // 未订阅时本地版本号不可信
+        tableVersionCache.update("users", 2);
+        assertArrayEquals(DATA, cache.lookup("user:1", "users").value());
+        assertEquals(1, commandCounts.get("mGet"));
+        assertNull(commandCounts.get("get"));
+
+        tableVersionCache.onChannelSubscribed(new byte[0], 1);
+        tableVersionCache.update("users", 2);
+        assertArrayEquals(DATA, cache.lookup("user:1", "users").value());
+        assertEquals(1, commandCounts.get("mGet"), "本地版本号可用时只需要 GET 缓存值");
+        assertEquals(1, commandCounts.get("get"));
+
+        // 只要有一张表没有本地版本号就回退到 MGET
+        assertNull(cache.lookup("user:1", "users", "orders").value());
+        assertEquals(2, commandCounts.get("mGet"));
+    }
+
+    private VersionStampedCache newCache(TableVersionCache tableVersionCache) {
+        return new VersionStampedCache(stringRedisTemplate, cacheDependencyService, properties, tableVersionCache);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, BiFunction<Method, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.apply(method, args));
+    }
+
+    private static String toKey(byte[] key) {
+        return new String(key, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+package top.noaharno.cachedependency.store;
+
+import org.junit.jupiter.api.Test;
+import top.noaharno.cachedependency.service.DependencyRegistration;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 进程内依赖关系存储的测试
+ */
+public class InMemoryDependencyStoreTest {
+
+    @Test
+    void invalidateEvictsPreviousVersionInPages() {
+        List<Collection<String>> pages = new ArrayList<>();
+        InMemoryDependencyStore store = new InMemoryDependencyStore(Set.of("users", "orders"), 2, page -> pages.add(List.copyOf(page)));
+        store.recordDependencies("user:1", 1, "users");
+        store.recordDependencies(List.of(
+                DependencyRegistration.of("user:2", 1, "users"),
+                DependencyRegistration.of("order:user:1", 60, "users", "orders")));
+        assertEquals(1, store.getVersion("users"));
+
+        assertEquals(3, store.invalidate("users"));
+        assertEquals(2, store.getVersion("users"));
+        assertEquals(List.of(2, 1), pages.stream().map(Collection::size).toList(), "应该按照页大小分页删除");
+        Set<String> evicted = new HashSet<>();
+        pages.forEach(evicted::addAll);
+        assertEquals(Set.of("user:1", "user:2", "order:user:1"), evicted);
+
+        // 新版本没有依赖关系，其它表不受影响
+        assertEquals(0, store.invalidate("users"));
+        assertEquals(1, store.invalidate("orders"));
+        assertThrows(RuntimeException.class, () -> store.recordDependencies("product:1", 1, "products"));
+    }
+
+    @Test
+    void concurrentRecordsAreNeverLost() throws Exception {
+        Set<String> evicted = ConcurrentHashMap.newKeySet();
+        InMemoryDependencyStore store = new InMemoryDependencyStore(Set.of("users"), 16, evicted::addAll);
+        int keys = 20000;
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < keys; i += 3) {
+                        store.recordDependencies("user:" + i, 1, "users");
+                    }
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    store.invalidate("users");
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        store.invalidate("users");
+        assertEquals(keys, evicted.size(), "每个依赖关系都应该在某一次清理中被删除");
+    }
+}
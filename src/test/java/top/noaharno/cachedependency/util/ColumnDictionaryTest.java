@@ -0,0 +1,52 @@
+package top.noaharno.cachedependency.util;
+
+import org.junit.jupiter.api.Test;
+import top.noaharno.cachedependency.service.ColumnDictionary;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 列序号字典的测试
+ */
+public class ColumnDictionaryTest {
+
+    private final ColumnDictionary dictionary = new ColumnDictionary(Map.of("users", List.of("name", "email", "age", "NAME")));
+
+    @Test
+    void assignsOrdinalsInConfiguredOrder() {
+        assertTrue(dictionary.isTracked("users"));
+        assertFalse(dictionary.isTracked("orders"));
+        assertEquals(0b001, dictionary.dependencyMask("users", "name"));
+        assertEquals(0b110, dictionary.dependencyMask("users", "email", "age"));
+        // 重复的列沿用第一次出现的序号
+        assertEquals(0b001, dictionary.dependencyMask("users", "NAME"));
+        assertThrows(RuntimeException.class, () -> dictionary.dependencyMask("users", "password"));
+        assertThrows(RuntimeException.class, () -> dictionary.dependencyMask("orders", "price"));
+    }
+
+    @Test
+    void normalizesQuotedColumnNames() {
+        assertEquals(0b011, dictionary.changeMask("users", Set.of("`name`", "\"EMAIL\"")));
+        assertEquals(0b100, dictionary.changeMask("users", Set.of("[Age]", "password")));
+        assertEquals(0b100, dictionary.dependencyMask("users", " `age` "));
+        assertEquals(0, dictionary.changeMask("users", Set.of("password")));
+        assertEquals(0, dictionary.changeMask("orders", Set.of("name")));
+        assertEquals(ColumnDictionary.ALL_COLUMNS, dictionary.changeMask("users", null));
+    }
+
+    @Test
+    void tracksAtMostSixtyFourColumns() {
+        List<String> columns = IntStream.range(0, Long.SIZE).mapToObj(i -> "c" + i).toList();
+        ColumnDictionary full = new ColumnDictionary(Map.of("wide", columns));
+        assertEquals(Long.MIN_VALUE, full.dependencyMask("wide", "c63"));
+        assertEquals(-1L, full.changeMask("wide", Set.copyOf(columns)));
+
+        List<String> tooMany = IntStream.rangeClosed(0, Long.SIZE).mapToObj(i -> "c" + i).toList();
+        assertThrows(RuntimeException.class, () -> new ColumnDictionary(Map.of("wide", tooMany)));
+    }
+}
@@ -0,0 +1,56 @@
+package top.noaharno.cachedependency.util;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 写操作影响行的分析测试
+ */
+public class RowKeyPlanAnalyzerTest {
+
+    private static final Map<String, String> ROW_KEY_COLUMNS = Map.of("users", "id");
+
+    @Test
+    void resolvesKeyPredicates() throws Exception {
+        assertPlan("UPDATE users SET name = ? WHERE id = ?", List.of(), List.of(2));
+        assertPlan("UPDATE users u SET u.name = ? WHERE u.id IN (?, ?) AND u.age > ?", List.of(), List.of(2, 3));
+        assertPlan("DELETE FROM users WHERE id = 42 OR (id = '43')", List.of("42", "43"), List.of());
+        assertPlan("DELETE FROM users WHERE ? = id", List.of(), List.of(1));
+        assertPlan("INSERT INTO users(id, name) VALUES (?, ?), (7, 'a')", List.of("7"), List.of(1));
+    }
+
+    @Test
+    void unresolvablePredicatesFallBackToWholeTable() throws Exception {
+        for (String sql : List.of(
+                "UPDATE users SET name = ?",
+                "UPDATE users SET name = ? WHERE age > ?",
+                "UPDATE users SET name = ? WHERE id = ? OR age > ?",
+                "UPDATE users SET id = ? WHERE id = ?",
+                "DELETE FROM users WHERE id NOT IN (?, ?)",
+                "DELETE FROM users WHERE id IN (SELECT user_id FROM orders)",
+                "INSERT INTO users(id, name) SELECT id, name FROM archived_users",
+                "INSERT INTO users(id, name) VALUES (?, ?) ON DUPLICATE KEY UPDATE name = ?",
+                // 由数据库生成主键时无法确定新行的主键
+                "INSERT INTO users(name) VALUES (?)",
+                "INSERT INTO users VALUES (?, ?)",
+                "UPDATE orders SET price = ? WHERE id = ?")) {
+            assertFalse(analyze(sql).containsKey("users"), sql);
+        }
+    }
+
+    private static void assertPlan(String sql, List<String> literals, List<Integer> parameterIndexes) throws Exception {
+        RowKeyPlan plan = analyze(sql).get("users");
+        assertNotNull(plan, sql);
+        assertEquals(literals, plan.literals(), sql);
+        assertEquals(parameterIndexes, plan.parameterIndexes(), sql);
+    }
+
+    private static Map<String, RowKeyPlan> analyze(String sql) throws Exception {
+        return RowKeyPlanAnalyzer.analyze(CCJSqlParserUtil.parse(sql), ROW_KEY_COLUMNS);
+    }
+}
@@ -0,0 +1,66 @@
+package top.noaharno.cachedependency.util;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.util.TablesNamesFinder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 轻量级表名提取器与 JSqlParser 的结果对比测试
+ */
+public class SimpleDmlTableExtractorTest {
+
+    private static final List<String> FAST_PATH_SQLS = List.of(
+            "INSERT INTO users(name, email, age) VALUES(?, ?, ?)",
+            "insert into orders (user_id, product_name) values (?, ?), (?, ?)",
+            "INSERT INTO users SET name = ?, age = ?",
+            "INSERT INTO orders(id, price) VALUES(?, ?) ON DUPLICATE KEY UPDATE price = VALUES(price)",
+            "UPDATE users SET name = ?, email = ?, age = ? WHERE id = ?",
+            "update products p set p.stock = p.stock - ? where p.id = ?",
+            "UPDATE users AS u SET u.name = 'it''s a select from join' WHERE u.id = ?",
+            "  UPDATE shop.orders SET price = price * 1.5e2 WHERE id IN (?, ?, ?)",
+            "DELETE FROM users WHERE id = ?",
+            "DELETE FROM orders",
+            "delete from products where id = ? order by id limit 10"
+    );
+
+    private static final List<String> FALLBACK_SQLS = List.of(
+            "INSERT INTO users(name) SELECT name FROM archived_users",
+            "UPDATE users u JOIN orders o ON o.user_id = u.id SET u.name = ?",
+            "UPDATE users SET age = (SELECT MAX(age) FROM users) WHERE id = ?",
+            "DELETE FROM orders WHERE user_id IN (SELECT id FROM users WHERE age > ?)",
+            "DELETE FROM orders o USING users u WHERE o.user_id = u.id",
+            "WITH t AS (SELECT id FROM users) DELETE FROM orders WHERE user_id IN (SELECT id FROM t)",
+            "UPDATE `users` SET name = ?",
+            "UPDATE users SET name = ? -- comment",
+            "UPDATE users SET name = ?; DELETE FROM orders",
+            "DELETE users FROM users WHERE id = ?",
+            "SELECT * FROM users"
+    );
+
+    @Test
+    void fastPathMatchesJSqlParser() throws Exception {
+        for (String sql : FAST_PATH_SQLS) {
+            Set<String> fast = SimpleDmlTableExtractor.extract(sql);
+            assertNotNull(fast, sql);
+            assertEquals(parseWithJSqlParser(sql), fast, sql);
+        }
+    }
+
+    @Test
+    void complexStatementsFallBack() throws Exception {
+        for (String sql : FALLBACK_SQLS) {
+            assertNull(SimpleDmlTableExtractor.extract(sql), sql);
+        }
+        // 回退后仍然由 JSqlParser 得到完整的表名
+        assertEquals(parseWithJSqlParser(FALLBACK_SQLS.get(0)), SqlAnalysisUtil.parseTableSet(FALLBACK_SQLS.get(0)));
+    }
+
+    private static Set<String> parseWithJSqlParser(String sql) throws Exception {
+        return new TablesNamesFinder<>().getTables(CCJSqlParserUtil.parse(sql));
+    }
+}
@@ -0,0 +1,94 @@
+package top.noaharno.cachedependency.util;
+
+import org.junit.jupiter.api.Test;
+import top.noaharno.cachedependency.util.SqlAnalysisUtil.SqlAnalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SQL 解析缓存的测试
+ */
+public class SqlAnalysisCacheTest {
+
+    @Test
+    void parseFailuresAreCached() {
+        SqlAnalysisCache cache = new SqlAnalysisCache(16, Map.of(), Set.of());
+        String sql = "SELEC name FRM users WHERE";
+        assertSame(SqlAnalysis.EMPTY, cache.getAnalysis("UserMapper.broken", sql));
+        assertSame(SqlAnalysis.EMPTY, cache.getAnalysis("UserMapper.broken", sql));
+        assertEquals(1, cache.getStats().misses(), "解析失败的 SQL 不应该重复解析");
+        assertEquals(1, cache.getStats().hits());
+    }
+
+    @Test
+    void concurrentMissesParseOnce() throws Exception {
+        AtomicInteger parses = new AtomicInteger();
+        SqlAnalysisCache cache = new SqlAnalysisCache(16, Map.of(), Set.of(), (sql, keyColumns, trackedTables) -> {
+            parses.incrementAndGet();
+            try {
+                // 放大并发未命中的窗口
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return SqlAnalysisUtil.parse(sql, keyColumns, trackedTables);
+        });
+        int threads = 16;
+        String sql = "UPDATE users SET name = ? WHERE id = ?";
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SqlAnalysis>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getAnalysis("UserMapper.update", sql);
+                }));
+            }
+            start.countDown();
+            SqlAnalysis first = futures.get(0).get();
+            for (Future<SqlAnalysis> future : futures) {
+                assertSame(first, future.get());
+            }
+        }
+        assertEquals(1, parses.get(), "同一条 SQL 并发未命中时只应该解析一次");
+        assertEquals(1, cache.getStats().misses());
+        assertEquals(threads - 1, cache.getStats().hits());
+        assertEquals(Set.of("users"), cache.getAnalysis("UserMapper.update", sql).tables());
+    }
+
+    @Test
+    void evictsInInsertionOrder() {
+        SqlAnalysisCache cache = new SqlAnalysisCache(2, Map.of(), Set.of());
+        cache.getAnalysis("UserMapper.update", "UPDATE users SET name = ? WHERE id = ?");
+        cache.getAnalysis("OrderMapper.update", "UPDATE orders SET price = ? WHERE id = ?");
+        cache.getAnalysis("ProductMapper.update", "UPDATE products SET stock = ? WHERE id = ?");
+        assertEquals(2, cache.getStats().size());
+        assertEquals(1, cache.getStats().evictions());
+
+        assertEquals(Set.of("orders"), cache.getAnalysis("OrderMapper.update", "UPDATE orders SET price = ? WHERE id = ?").tables());
+        assertEquals(3, cache.getStats().misses());
+        cache.getAnalysis("UserMapper.update", "UPDATE users SET name = ? WHERE id = ?");
+        assertEquals(4, cache.getStats().misses(), "最早写入的 SQL 应该已经被淘汰");
+    }
+
+    @Test
+    void instancesKeepTheirOwnConfiguration() {
+        String sql = "UPDATE users SET name = ? WHERE id = ?";
+        SqlAnalysisCache rowCache = new SqlAnalysisCache(16, Map.of("users", "id"), Set.of("users"));
+        SqlAnalysisCache tableCache = new SqlAnalysisCache(16, Map.of(), Set.of());
+        assertEquals(Set.of("users"), rowCache.getAnalysis("UserMapper.update", sql).rowKeyPlans().keySet());
+        assertEquals(Map.of("users", Set.of("name")), rowCache.getAnalysis("UserMapper.update", sql).updatedColumns());
+        assertTrue(tableCache.getAnalysis("UserMapper.update", sql).rowKeyPlans().isEmpty());
+        assertTrue(tableCache.getAnalysis("UserMapper.update", sql).updatedColumns().isEmpty());
+    }
+}
@@ -0,0 +1,41 @@
+package top.noaharno.cachedependency.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * UPDATE 修改的列的分析测试
+ */
+public class SqlAnalysisUtilTest {
+
+    private static final Set<String> TRACKED_TABLES = Set.of("users");
+
+    @Test
+    void singleTableUpdateReportsUpdatedColumns() {
+        assertEquals(Map.of("users", Set.of("name", "email")),
+                updatedColumns("UPDATE users SET name = ?, email = ? WHERE id = ?"));
+        assertEquals(Map.of("users", Set.of("age")), updatedColumns("UPDATE users u SET u.age = u.age + 1 WHERE u.id = ?"));
+        assertEquals(Map.of("users", Set.of("name", "age")), updatedColumns("UPDATE users SET (name, age) = (?, ?) WHERE id = ?"));
+    }
+
+    @Test
+    void otherStatementsAreTreatedAsUpdatingAllColumns() {
+        for (String sql : List.of(
+                "UPDATE users u JOIN orders o ON o.user_id = u.id SET u.name = ? WHERE o.id = ?",
+                "UPDATE users SET name = o.name FROM orders o WHERE o.user_id = users.id",
+                "INSERT INTO users(id, name) VALUES (?, ?)",
+                "DELETE FROM users WHERE id = ?",
+                "UPDATE orders SET price = ? WHERE id = ?")) {
+            assertTrue(updatedColumns(sql).isEmpty(), sql);
+        }
+    }
+
+    private static Map<String, Set<String>> updatedColumns(String sql) {
+        return SqlAnalysisUtil.analyze(sql, Map.of(), TRACKED_TABLES).updatedColumns();
+    }
+}